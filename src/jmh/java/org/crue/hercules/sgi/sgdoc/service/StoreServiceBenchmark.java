@@ -0,0 +1,107 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.crue.hercules.sgi.sgdoc.actuate.DocumentoMetrics;
+import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.utils.StagedFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Escritura de un fichero en el store tal como la hace
+ * {@link DocumentoService#create(Documento, java.io.InputStream)}: preparación
+ * con cálculo del hash y movimiento a su ubicación definitiva (modo DEFAULT,
+ * sin base de datos ni transacciones).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreServiceBenchmark {
+
+  @Param({ "10240", "1048576", "10485760" })
+  private int fileSize;
+
+  @Param({ "DATE", "SHARDED" })
+  private StoreProperties.Layout layout;
+
+  @Param({ "false", "true" })
+  private boolean compression;
+
+  private Path directory;
+  private StoreService storeService;
+  private byte[] content;
+  private Documento documento;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("sgdoc-jmh-");
+    StoreProperties storeProperties = new StoreProperties();
+    storeProperties.setPath(directory.toString());
+    storeProperties.setLayout(layout);
+    storeProperties.getCompression().setEnabled(compression);
+    storeService = new StoreService(storeProperties, null, new DocumentoMetrics(new SimpleMeterRegistry()),
+        ForkJoinPool.commonPool(), null);
+    content = new byte[fileSize];
+    // Half random, half repeated bytes, so that compression has something to do
+    new Random(42).nextBytes(content);
+    for (int i = fileSize / 2; i < fileSize; i++) {
+      content[i] = (byte) ('a' + i % 26);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    FileSystemUtils.deleteRecursively(directory);
+  }
+
+  /**
+   * Deleting each file keeps the store from filling the disk; the operation
+   * takes milliseconds, so the per invocation overhead is negligible.
+   */
+  @TearDown(Level.Invocation)
+  public void delete() {
+    if (documento != null) {
+      storeService.delete(documento);
+      documento = null;
+    }
+  }
+
+  @Benchmark
+  public Documento create() throws IOException {
+    Documento created = new Documento();
+    created.setDocumentoRef(UUID.randomUUID().toString());
+    created.setFechaCreacion(LocalDateTime.now());
+    created.setTipo("text/plain");
+    StagedFile staged = storeService.stage(new ByteArrayInputStream(content), created.getTipo());
+    storeService.commit(created, staged);
+    documento = created;
+    return created;
+  }
+}
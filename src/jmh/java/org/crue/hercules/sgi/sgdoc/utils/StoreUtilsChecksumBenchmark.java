@@ -0,0 +1,109 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Cálculo del hash de los ficheros del store: {@link StoreUtils#getFileChecksum}
+ * frente al mismo bucle con distintos tamaños de buffer y al hash en árbol
+ * ({@link MerkleUtils}), y la escritura con cálculo del hash en una única
+ * pasada ({@link StoreUtils#stage}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreUtilsChecksumBenchmark {
+
+  @Param({ "1024", "1048576", "67108864" })
+  private int fileSize;
+
+  private Path directory;
+  private File file;
+
+  /**
+   * Tamaño del buffer de {@link #checksumWithBuffer}, en un estado aparte para
+   * que el resto de benchmarks no se repitan por cada tamaño.
+   */
+  @State(Scope.Benchmark)
+  public static class BufferState {
+
+    @Param({ "1024", "8192", "65536", "262144" })
+    private int bufferSize;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("sgdoc-jmh-");
+    file = directory.resolve("content").toFile();
+    byte[] content = new byte[fileSize];
+    new Random(42).nextBytes(content);
+    Files.write(file.toPath(), content);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    FileSystemUtils.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public String getFileChecksum() throws IOException, NoSuchAlgorithmException {
+    return StoreUtils.getFileChecksum(MessageDigest.getInstance("SHA-256"), file);
+  }
+
+  @Benchmark
+  public String checksumWithBuffer(BufferState state) throws IOException, NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    try (FileInputStream fis = new FileInputStream(file)) {
+      byte[] buffer = new byte[state.bufferSize];
+      int bytesCount;
+      while ((bytesCount = fis.read(buffer)) != -1) {
+        digest.update(buffer, 0, bytesCount);
+      }
+    }
+    return StoreUtils.toHex(digest.digest());
+  }
+
+  @Benchmark
+  public String merkleHash() throws IOException {
+    return MerkleUtils.hash(file.toPath(), ForkJoinPool.commonPool());
+  }
+
+  @Benchmark
+  public void stage(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+    StagedFile staged;
+    try (InputStream content = new FileInputStream(file)) {
+      staged = StoreUtils.stage(content, directory.resolve(StoreUtils.TMP_DIRECTORY),
+          MessageDigest.getInstance("SHA-256"));
+    }
+    blackhole.consume(staged.getHash());
+    StoreUtils.discard(staged);
+  }
+}
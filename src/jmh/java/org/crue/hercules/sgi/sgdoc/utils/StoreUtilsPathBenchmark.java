@@ -0,0 +1,77 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+
+/**
+ * Construcción de las rutas de los ficheros del store y codificación
+ * hexadecimal de los hashes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreUtilsPathBenchmark {
+
+  private static final String STORE_PATH = "/tmp/store";
+
+  private Documento documento;
+  private byte[] hash;
+
+  @Setup
+  public void setup() throws NoSuchAlgorithmException {
+    documento = new Documento();
+    documento.setDocumentoRef(UUID.randomUUID().toString());
+    documento.setFechaCreacion(LocalDateTime.now());
+    hash = MessageDigest.getInstance("SHA-256").digest(documento.getDocumentoRef().getBytes());
+  }
+
+  @Benchmark
+  public Resource getResource() {
+    return StoreUtils.getResource(STORE_PATH, documento);
+  }
+
+  @Benchmark
+  public Path getDatePath() {
+    return StoreUtils.getDatePath(STORE_PATH, documento);
+  }
+
+  @Benchmark
+  public Path getShardedPath() {
+    return StoreUtils.getShardedPath(STORE_PATH, documento.getDocumentoRef());
+  }
+
+  @Benchmark
+  public String toHex() {
+    return StoreUtils.toHex(hash);
+  }
+
+  @Benchmark
+  public String toHexFormat() {
+    // Reference: the usual String.format based encoding
+    StringBuilder sb = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+}
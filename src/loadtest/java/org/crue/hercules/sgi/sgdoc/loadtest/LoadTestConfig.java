@@ -0,0 +1,104 @@
+package org.crue.hercules.sgi.sgdoc.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.unit.DataSize;
+
+import lombok.Getter;
+
+/**
+ * Configuración de la prueba de carga. Se lee de los argumentos del programa
+ * con el formato <code>--clave=valor</code>:
+ * <ul>
+ * <li><code>concurrency</code>: número de clientes simultáneos (16).</li>
+ * <li><code>duration</code>: duración de la medición (PT1M).</li>
+ * <li><code>warmup</code>: duración del calentamiento, no medido (PT15S).</li>
+ * <li><code>mix</code>: peso de cada operación
+ * (upload=20,list=10,metadata=30,download=40).</li>
+ * <li><code>sizes</code>: peso de cada tamaño de fichero subido
+ * (10KB=60,1MB=30,10MB=10).</li>
+ * <li><code>seed</code>: documentos creados antes de empezar (50).</li>
+ * <li><code>url</code>: URL de un servicio ya arrancado (si no se indica se
+ * arranca la aplicación sobre H2 y un store temporal).</li>
+ * <li><code>report</code>: fichero del informe JSON
+ * (target/loadtest-report.json).</li>
+ * </ul>
+ */
+@Getter
+public class LoadTestConfig {
+
+  private final int concurrency;
+  private final Duration duration;
+  private final Duration warmup;
+  private final Map<Operation, Integer> mix;
+  private final Map<DataSize, Integer> sizes;
+  private final int seed;
+  private final String url;
+  private final String report;
+
+  public LoadTestConfig(String[] args) {
+    Map<String, String> values = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+        throw new IllegalArgumentException("Invalid argument " + arg + ", expected --key=value");
+      }
+      values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+    concurrency = Integer.parseInt(values.getOrDefault("concurrency", "16"));
+    duration = Duration.parse(values.getOrDefault("duration", "PT1M"));
+    warmup = Duration.parse(values.getOrDefault("warmup", "PT15S"));
+    seed = Integer.parseInt(values.getOrDefault("seed", "50"));
+    url = values.get("url");
+    report = values.getOrDefault("report", "target/loadtest-report.json");
+
+    mix = new LinkedHashMap<>();
+    for (Map.Entry<String, Integer> entry : parseWeights(
+        values.getOrDefault("mix", "upload=20,list=10,metadata=30,download=40")).entrySet()) {
+      mix.put(Operation.valueOf(entry.getKey().toUpperCase()), entry.getValue());
+    }
+    sizes = new LinkedHashMap<>();
+    for (Map.Entry<String, Integer> entry : parseWeights(values.getOrDefault("sizes", "10KB=60,1MB=30,10MB=10"))
+        .entrySet()) {
+      sizes.put(DataSize.parse(entry.getKey()), entry.getValue());
+    }
+  }
+
+  /**
+   * Tamaño del mayor fichero que se puede subir.
+   *
+   * @return el tamaño.
+   */
+  public DataSize getMaxSize() {
+    return sizes.keySet().stream().max((a, b) -> Long.compare(a.toBytes(), b.toBytes()))
+        .orElse(DataSize.ofMegabytes(1));
+  }
+
+  private static Map<String, Integer> parseWeights(String value) {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String item : value.split(",")) {
+      String[] parts = item.trim().split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid weight " + item + ", expected name=weight");
+      }
+      weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+    }
+    return weights;
+  }
+
+  /**
+   * Operaciones de la prueba de carga.
+   */
+  public enum Operation {
+    /** PUT /documentos */
+    UPLOAD,
+    /** GET /documentos */
+    LIST,
+    /** GET /documentos/{id} */
+    METADATA,
+    /** GET /documentos/{id}/archivo */
+    DOWNLOAD;
+  }
+}
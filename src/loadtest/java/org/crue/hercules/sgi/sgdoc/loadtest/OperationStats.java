@@ -0,0 +1,72 @@
+package org.crue.hercules.sgi.sgdoc.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * Resultados de una operación de la prueba de carga. Las latencias se guardan
+ * en un histograma (HdrHistogram, dependencia de Micrometer) con resolución de
+ * microsegundos, de forma que la memoria no depende de la duración.
+ */
+public class OperationStats {
+
+  private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  private final ConcurrentHistogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+
+  /**
+   * Registra una petición.
+   *
+   * @param nanos duración de la petición (en nanosegundos).
+   * @param bytes bytes enviados o recibidos.
+   * @param error <code>true</code> si la petición ha fallado.
+   */
+  public void record(long nanos, long bytes, boolean error) {
+    latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY_MICROS));
+    this.bytes.add(bytes);
+    if (error) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Descarta lo registrado (fin del calentamiento).
+   */
+  public void reset() {
+    latencies.reset();
+    errors.reset();
+    bytes.reset();
+  }
+
+  /**
+   * Resumen de los resultados.
+   *
+   * @param seconds duración de la medición (en segundos).
+   * @return el resumen (latencias en milisegundos).
+   */
+  public Map<String, Object> summary(double seconds) {
+    long count = latencies.getTotalCount();
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("count", count);
+    summary.put("errors", errors.sum());
+    summary.put("errorRate", count > 0 ? errors.sum() / (double) count : 0);
+    summary.put("throughput", count / seconds);
+    summary.put("bytesPerSecond", bytes.sum() / seconds);
+    summary.put("p50", millis(latencies.getValueAtPercentile(50)));
+    summary.put("p99", millis(latencies.getValueAtPercentile(99)));
+    summary.put("p999", millis(latencies.getValueAtPercentile(99.9)));
+    summary.put("max", millis(latencies.getMaxValue()));
+    summary.put("mean", latencies.getMean() / 1000);
+    return summary;
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000d;
+  }
+}
@@ -0,0 +1,270 @@
+package org.crue.hercules.sgi.sgdoc.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.crue.hercules.sgi.sgdoc.SgdocApplication;
+import org.crue.hercules.sgi.sgdoc.loadtest.LoadTestConfig.Operation;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Prueba de carga de la API REST de documentos.
+ *
+ * Arranca la aplicación sobre una base de datos H2 en memoria y un store
+ * temporal (salvo que se indique la URL de un servicio ya arrancado) y lanza
+ * una mezcla de subidas, listados, consultas y descargas con el número de
+ * clientes simultáneos configurado. Al terminar escribe un informe JSON con el
+ * rendimiento, las latencias (p50, p99, p999) y la tasa de errores de cada
+ * operación.
+ *
+ * @see LoadTestConfig
+ */
+@Slf4j
+public class SgdocLoadTest {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(5);
+
+  private final LoadTestConfig config;
+  private final String baseUrl;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+  private final Map<DataSize, byte[]> payloads = new LinkedHashMap<>();
+  private final List<String> documentoRefs = Collections.synchronizedList(new ArrayList<>());
+
+  public SgdocLoadTest(LoadTestConfig config, String baseUrl) {
+    this.config = config;
+    this.baseUrl = baseUrl;
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new OperationStats());
+    }
+    Random random = new Random(42);
+    for (DataSize size : config.getSizes().keySet()) {
+      byte[] payload = new byte[Math.toIntExact(size.toBytes())];
+      random.nextBytes(payload);
+      payloads.put(size, payload);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTestConfig config = new LoadTestConfig(args);
+
+    Path directory = null;
+    ConfigurableApplicationContext context = null;
+    String baseUrl = config.getUrl();
+    if (baseUrl == null) {
+      directory = Files.createTempDirectory("sgdoc-loadtest-");
+      long maxFileSize = Math.max(config.getMaxSize().toBytes(), DataSize.ofMegabytes(10).toBytes());
+      // Command line arguments take precedence over application.yml
+      context = new SpringApplicationBuilder(SgdocApplication.class).run("--server.port=0",
+          "--sgi.store.path=" + directory.resolve("store"),
+          "--spring.datasource.url=jdbc:h2:mem:sgdoc-loadtest;DB_CLOSE_DELAY=-1",
+          "--sgi.upload.max-file-size=" + maxFileSize + "B",
+          "--sgi.cache.enabled=false",
+          "--sgi.search.enabled=false",
+          "--logging.level.org.crue.hercules=INFO");
+      baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    try {
+      new SgdocLoadTest(config, baseUrl).run();
+    } finally {
+      if (context != null) {
+        context.close();
+      }
+      if (directory != null) {
+        FileSystemUtils.deleteRecursively(directory);
+      }
+    }
+  }
+
+  /**
+   * Ejecuta la prueba de carga y escribe el informe.
+   *
+   * @throws Exception si la prueba no se puede completar.
+   */
+  public void run() throws Exception {
+    log.info("Seeding {} documents at {}", config.getSeed(), baseUrl);
+    for (int i = 0; i < config.getSeed(); i++) {
+      execute(Operation.UPLOAD, ThreadLocalRandom.current());
+    }
+    stats.values().forEach(OperationStats::reset);
+
+    long warmupEnd = System.nanoTime() + config.getWarmup().toNanos();
+    long end = warmupEnd + config.getDuration().toNanos();
+    ExecutorService workers = Executors.newFixedThreadPool(config.getConcurrency());
+    for (int i = 0; i < config.getConcurrency(); i++) {
+      workers.execute(() -> {
+        Random random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+          execute(pick(config.getMix(), random), random);
+        }
+      });
+    }
+    workers.shutdown();
+
+    log.info("Warming up for {} with {} clients", config.getWarmup(), config.getConcurrency());
+    TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnd - System.nanoTime()));
+    stats.values().forEach(OperationStats::reset);
+    long start = System.nanoTime();
+
+    log.info("Measuring for {}", config.getDuration());
+    workers.awaitTermination(config.getDuration().toMillis() + TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    double seconds = (Math.min(System.nanoTime(), end) - start) / 1e9;
+
+    writeReport(seconds);
+  }
+
+  private void execute(Operation operation, Random random) {
+    String documentoRef = null;
+    if (operation == Operation.METADATA || operation == Operation.DOWNLOAD) {
+      synchronized (documentoRefs) {
+        if (documentoRefs.isEmpty()) {
+          operation = Operation.UPLOAD;
+        } else {
+          documentoRef = documentoRefs.get(random.nextInt(documentoRefs.size()));
+        }
+      }
+    }
+
+    long start = System.nanoTime();
+    Response response = null;
+    try {
+      switch (operation) {
+        case UPLOAD:
+          response = exchange("PUT", "/documentos?nombre=loadtest.bin", payloads.get(pick(config.getSizes(), random)),
+              true);
+          if (response.status == HttpURLConnection.HTTP_CREATED) {
+            documentoRefs.add(mapper.readTree(response.body).get("documentoRef").asText());
+          }
+          break;
+        case LIST:
+          response = exchange("GET", "/documentos", null, false);
+          break;
+        case METADATA:
+          response = exchange("GET", "/documentos/" + documentoRef, null, false);
+          break;
+        case DOWNLOAD:
+          response = exchange("GET", "/documentos/" + documentoRef + "/archivo", null, false);
+          break;
+      }
+    } catch (IOException | RuntimeException e) {
+      log.debug("{} failed", operation, e);
+    }
+    boolean error = response == null || response.status >= HttpURLConnection.HTTP_BAD_REQUEST;
+    stats.get(operation).record(System.nanoTime() - start, response != null ? response.bytes : 0, error);
+  }
+
+  private Response exchange(String method, String path, byte[] content, boolean keepBody) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    connection.setRequestMethod(method);
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    long bytes = 0;
+    if (content != null) {
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(content.length);
+      connection.setRequestProperty("Content-Type", "application/octet-stream");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(content);
+      }
+      bytes += content.length;
+    }
+
+    Response response = new Response();
+    response.status = connection.getResponseCode();
+    InputStream in = response.status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream()
+        : connection.getInputStream();
+    if (in != null) {
+      ByteArrayOutputStream body = keepBody ? new ByteArrayOutputStream() : null;
+      try (InputStream stream = in) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesCount;
+        while ((bytesCount = stream.read(buffer)) != -1) {
+          if (body != null) {
+            body.write(buffer, 0, bytesCount);
+          }
+          bytes += bytesCount;
+        }
+      }
+      response.body = body != null ? body.toByteArray() : null;
+    }
+    response.bytes = bytes;
+    return response;
+  }
+
+  private void writeReport(double seconds) throws IOException {
+    Map<String, Object> configuration = new LinkedHashMap<>();
+    configuration.put("url", baseUrl);
+    configuration.put("concurrency", config.getConcurrency());
+    configuration.put("duration", config.getDuration().toString());
+    configuration.put("warmup", config.getWarmup().toString());
+    configuration.put("mix", config.getMix());
+    Map<String, Integer> sizes = new LinkedHashMap<>();
+    config.getSizes().forEach((size, weight) -> sizes.put(size.toBytes() + "B", weight));
+    configuration.put("sizes", sizes);
+
+    Map<String, Object> operations = new LinkedHashMap<>();
+    stats.forEach((operation, operationStats) -> operations.put(operation.name().toLowerCase(),
+        operationStats.summary(seconds)));
+
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("timestamp", Instant.now().toString());
+    report.put("seconds", seconds);
+    report.put("configuration", configuration);
+    report.put("operations", operations);
+    report.put("latencyUnit", "ms");
+
+    File file = new File(config.getReport());
+    if (file.getParentFile() != null) {
+      Files.createDirectories(file.getParentFile().toPath());
+    }
+    mapper.writerWithDefaultPrettyPrinter().writeValue(file, report);
+    log.info("Load test report written to {}:\n{}", file.getAbsolutePath(),
+        mapper.writerWithDefaultPrettyPrinter().writeValueAsString(operations));
+  }
+
+  private static <T> T pick(Map<T, Integer> weights, Random random) {
+    int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+    int value = random.nextInt(total);
+    for (Map.Entry<T, Integer> entry : weights.entrySet()) {
+      value -= entry.getValue();
+      if (value < 0) {
+        return entry.getKey();
+      }
+    }
+    throw new IllegalStateException("Empty weights");
+  }
+
+  private static class Response {
+    private int status;
+    private long bytes;
+    private byte[] body;
+  }
+}
@@ -0,0 +1,217 @@
+package org.crue.hercules.sgi.sgdoc.actuate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Métricas de las subidas, descargas y accesos al store de los documentos
+ * (publicadas en <code>/actuator/prometheus</code>).
+ *
+ * Las métricas se etiquetan con el tipo (MIME) de los documentos. Como el
+ * tipo lo indica el cliente, para acotar el número de series sólo se
+ * distinguen los tipos de {@link #TIPOS} y el resto se agrupan como
+ * <code>other</code>. Los tiempos se publican con un conjunto fijo de
+ * intervalos en lugar de un histograma completo.
+ */
+@Component
+public class DocumentoMetrics {
+
+  /** Tipos que se distinguen en las etiquetas */
+  public static final Set<String> TIPOS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "application/pdf", "application/zip", "application/octet-stream", "application/xml", "application/json",
+      "application/msword", "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+      "application/vnd.ms-excel", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+      "application/vnd.oasis.opendocument.text", "image/jpeg", "image/png", "text/plain", "text/csv")));
+
+  /** Límites de los intervalos de los histogramas de tiempos */
+  private static final Duration[] SLO = { Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(100),
+      Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofSeconds(5),
+      Duration.ofSeconds(30) };
+
+  private static final String TAG_TIPO = "tipo";
+  private static final String TAG_OUTCOME = "outcome";
+  private static final String TAG_OPERATION = "operation";
+  private static final String TAG_DIRECTION = "direction";
+  private static final String OTHER = "other";
+  private static final String UNKNOWN = "unknown";
+  private static final String SUCCESS = "success";
+  private static final String ERROR = "error";
+  private static final String BYTES = "bytes";
+
+  private final MeterRegistry registry;
+  private final AtomicInteger uploads = new AtomicInteger();
+  private final AtomicInteger downloads = new AtomicInteger();
+
+  public DocumentoMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder("sgdoc.transfers.active", uploads, AtomicInteger::get).tag(TAG_DIRECTION, "upload")
+        .description("Subidas en curso").register(registry);
+    Gauge.builder("sgdoc.transfers.active", downloads, AtomicInteger::get).tag(TAG_DIRECTION, "download")
+        .description("Descargas en curso").register(registry);
+  }
+
+  /**
+   * Inicia la medición de una subida.
+   *
+   * @return la medición iniciada.
+   */
+  public Timer.Sample startUpload() {
+    uploads.incrementAndGet();
+    return Timer.start(registry);
+  }
+
+  /**
+   * Finaliza la medición de una subida.
+   *
+   * @param sample medición iniciada con {@link #startUpload()}.
+   * @param tipo   tipo del documento.
+   * @param bytes  bytes recibidos.
+   * @param error  <code>true</code> si la subida ha fallado.
+   */
+  public void stopUpload(Timer.Sample sample, String tipo, long bytes, boolean error) {
+    uploads.decrementAndGet();
+    Tags tags = Tags.of(TAG_TIPO, tipo(tipo), TAG_OUTCOME, outcome(error));
+    sample.stop(Timer.builder("sgdoc.documentos.create").description("Tiempo de creación de los documentos")
+        .tags(tags).serviceLevelObjectives(SLO).register(registry));
+    if (!error) {
+      DistributionSummary.builder("sgdoc.documentos.bytes.in").description("Tamaño de los ficheros subidos")
+          .baseUnit(BYTES).tags(tags).register(registry).record(bytes);
+    }
+  }
+
+  /**
+   * Inicia la medición de una consulta.
+   *
+   * @return la medición iniciada.
+   */
+  public Timer.Sample startFind() {
+    return Timer.start(registry);
+  }
+
+  /**
+   * Finaliza la medición de una consulta de los metadatos de un documento.
+   *
+   * @param sample medición iniciada con {@link #startFind()}.
+   * @param tipo   tipo del documento (<code>null</code> si no se ha encontrado).
+   * @param error  <code>true</code> si la consulta ha fallado.
+   */
+  public void stopFind(Timer.Sample sample, String tipo, boolean error) {
+    sample.stop(Timer.builder("sgdoc.documentos.find").description("Tiempo de consulta de los documentos")
+        .tags(TAG_TIPO, tipo(tipo), TAG_OUTCOME, outcome(error)).serviceLevelObjectives(SLO).register(registry));
+  }
+
+  /**
+   * Inicia la medición de una descarga.
+   *
+   * @return la medición iniciada.
+   */
+  public Timer.Sample startDownload() {
+    downloads.incrementAndGet();
+    return Timer.start(registry);
+  }
+
+  /**
+   * Finaliza la medición de una descarga.
+   *
+   * @param sample medición iniciada con {@link #startDownload()}.
+   * @param tipo   tipo del documento.
+   * @param bytes  bytes enviados.
+   * @param error  <code>true</code> si la descarga ha fallado o se ha
+   *               interrumpido.
+   */
+  public void stopDownload(Timer.Sample sample, String tipo, long bytes, boolean error) {
+    downloads.decrementAndGet();
+    Tags tags = Tags.of(TAG_TIPO, tipo(tipo), TAG_OUTCOME, outcome(error));
+    sample.stop(Timer.builder("sgdoc.documentos.download").description("Tiempo de descarga de los ficheros")
+        .tags(tags).serviceLevelObjectives(SLO).register(registry));
+    DistributionSummary.builder("sgdoc.documentos.bytes.out").description("Bytes enviados en las descargas")
+        .baseUnit(BYTES).tags(tags).register(registry).record(bytes);
+  }
+
+  /**
+   * Registra el cálculo del hash de un fichero.
+   *
+   * @param tipo  tipo del documento.
+   * @param bytes bytes procesados.
+   * @param nanos tiempo empleado (en nanosegundos).
+   */
+  public void recordHash(String tipo, long bytes, long nanos) {
+    Tags tags = Tags.of(TAG_TIPO, tipo(tipo));
+    Timer.builder("sgdoc.store.hash").description("Tiempo de cálculo del hash de los ficheros").tags(tags)
+        .serviceLevelObjectives(SLO).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+    if (nanos > 0) {
+      DistributionSummary.builder("sgdoc.store.hash.throughput").description("Velocidad de cálculo del hash")
+          .baseUnit("bytes.per.second").tags(tags).register(registry)
+          .record(bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+  }
+
+  /**
+   * Registra una escritura en el store.
+   *
+   * @param operation fase de la escritura (<code>stage</code> o
+   *                  <code>commit</code>).
+   * @param tipo      tipo del documento.
+   * @param nanos     tiempo empleado (en nanosegundos).
+   */
+  public void recordStoreWrite(String operation, String tipo, long nanos) {
+    Timer.builder("sgdoc.store.write").description("Tiempo de escritura de los ficheros en el store")
+        .tags(TAG_OPERATION, operation, TAG_TIPO, tipo(tipo)).serviceLevelObjectives(SLO).register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Registra la apertura de un fichero del store para su lectura (hasta que está
+   * disponible el primer bloque).
+   *
+   * @param tipo  tipo del documento.
+   * @param nanos tiempo empleado (en nanosegundos).
+   */
+  public void recordStoreRead(String tipo, long nanos) {
+    Timer.builder("sgdoc.store.read").description("Tiempo hasta el primer bloque leído del store")
+        .tags(TAG_TIPO, tipo(tipo)).serviceLevelObjectives(SLO).register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Registra un documento cuyo fichero no se encuentra en el store.
+   *
+   * @param tipo tipo del documento.
+   */
+  public void archivoNotFound(String tipo) {
+    Counter.builder("sgdoc.store.not.found").description("Documentos sin fichero en el store")
+        .tags(TAG_TIPO, tipo(tipo)).register(registry).increment();
+  }
+
+  private String tipo(String tipo) {
+    if (tipo == null) {
+      return UNKNOWN;
+    }
+    // Parameters (charset, boundary...) would multiply the series
+    int semicolon = tipo.indexOf(';');
+    String value = (semicolon >= 0 ? tipo.substring(0, semicolon) : tipo).trim().toLowerCase(Locale.ROOT);
+    if (value.isEmpty()) {
+      return UNKNOWN;
+    }
+    return TIPOS.contains(value) ? value : OTHER;
+  }
+
+  private static String outcome(boolean error) {
+    return error ? ERROR : SUCCESS;
+  }
+}
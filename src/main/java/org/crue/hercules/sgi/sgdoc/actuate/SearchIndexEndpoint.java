@@ -0,0 +1,46 @@
+package org.crue.hercules.sgi.sgdoc.actuate;
+
+import org.crue.hercules.sgi.sgdoc.dto.IndexacionEstado;
+import org.crue.hercules.sgi.sgdoc.service.SearchService;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * SearchIndexEndpoint
+ * 
+ * Actuator endpoint (<code>/actuator/searchindex</code>) para reconstruir el
+ * índice de búsqueda a partir de la tabla de documentos: <code>GET</code>
+ * devuelve el progreso, <code>POST</code> inicia una reconstrucción y
+ * <code>DELETE</code> la detiene.
+ */
+@Component
+@Endpoint(id = "searchindex")
+@ConditionalOnProperty(name = "sgi.search.enabled", havingValue = "true")
+public class SearchIndexEndpoint {
+
+  /** Search service */
+  private final SearchService service;
+
+  public SearchIndexEndpoint(SearchService searchService) {
+    this.service = searchService;
+  }
+
+  @ReadOperation
+  public IndexacionEstado estado() {
+    return service.getEstado();
+  }
+
+  @WriteOperation
+  public IndexacionEstado rebuild() {
+    return service.rebuild();
+  }
+
+  @DeleteOperation
+  public IndexacionEstado stop() {
+    return service.stop();
+  }
+}
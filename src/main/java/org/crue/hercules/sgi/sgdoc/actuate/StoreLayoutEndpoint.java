@@ -0,0 +1,37 @@
+package org.crue.hercules.sgi.sgdoc.actuate;
+
+import org.crue.hercules.sgi.sgdoc.dto.MigracionEstado;
+import org.crue.hercules.sgi.sgdoc.service.StoreLayoutMigrationService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * StoreLayoutEndpoint
+ * 
+ * Actuator endpoint (<code>/actuator/storelayout</code>) para migrar los
+ * ficheros del store a la organización configurada: <code>GET</code> devuelve
+ * el estado de la migración y <code>POST</code> la inicia.
+ */
+@Component
+@Endpoint(id = "storelayout")
+public class StoreLayoutEndpoint {
+
+  /** StoreLayoutMigration service */
+  private final StoreLayoutMigrationService service;
+
+  public StoreLayoutEndpoint(StoreLayoutMigrationService storeLayoutMigrationService) {
+    this.service = storeLayoutMigrationService;
+  }
+
+  @ReadOperation
+  public MigracionEstado estado() {
+    return service.getEstado();
+  }
+
+  @WriteOperation
+  public MigracionEstado migrate() {
+    return service.start();
+  }
+}
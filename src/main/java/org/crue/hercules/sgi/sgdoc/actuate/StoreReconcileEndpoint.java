@@ -0,0 +1,52 @@
+package org.crue.hercules.sgi.sgdoc.actuate;
+
+import java.time.LocalDate;
+
+import org.crue.hercules.sgi.sgdoc.dto.ReconciliacionEstado;
+import org.crue.hercules.sgi.sgdoc.service.StoreReconciliationService;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * StoreReconcileEndpoint
+ * 
+ * Actuator endpoint (<code>/actuator/storereconcile</code>) para conciliar los
+ * ficheros del store con los documentos: <code>GET</code> devuelve el progreso
+ * y las incidencias, <code>POST</code> inicia una conciliación (de los días
+ * <code>desde</code>-<code>hasta</code> en formato ISO o, si no se indican, de
+ * todo el store) y <code>DELETE</code> la detiene.
+ * 
+ * Con <code>sgi.reconcile.reclaim</code> la conciliación elimina ficheros, por
+ * lo que, como el resto de endpoints de administración del store, no se expone
+ * por defecto (ver <code>management</code> en <code>application.yml</code>).
+ */
+@Component
+@Endpoint(id = "storereconcile")
+public class StoreReconcileEndpoint {
+
+  /** StoreReconciliation service */
+  private final StoreReconciliationService service;
+
+  public StoreReconcileEndpoint(StoreReconciliationService storeReconciliationService) {
+    this.service = storeReconciliationService;
+  }
+
+  @ReadOperation
+  public ReconciliacionEstado estado() {
+    return service.getEstado();
+  }
+
+  @WriteOperation
+  public ReconciliacionEstado reconcile(@Nullable String desde, @Nullable String hasta) {
+    return service.start(desde != null ? LocalDate.parse(desde) : null, hasta != null ? LocalDate.parse(hasta) : null);
+  }
+
+  @DeleteOperation
+  public ReconciliacionEstado stop() {
+    return service.stop();
+  }
+}
@@ -0,0 +1,44 @@
+package org.crue.hercules.sgi.sgdoc.actuate;
+
+import org.crue.hercules.sgi.sgdoc.dto.IntegridadEstado;
+import org.crue.hercules.sgi.sgdoc.service.StoreScrubService;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * StoreScrubEndpoint
+ * 
+ * Actuator endpoint (<code>/actuator/storescrub</code>) para comprobar la
+ * integridad de los ficheros del store: <code>GET</code> devuelve el progreso y
+ * los ficheros con discrepancias, <code>POST</code> inicia una comprobación y
+ * <code>DELETE</code> la detiene.
+ */
+@Component
+@Endpoint(id = "storescrub")
+public class StoreScrubEndpoint {
+
+  /** StoreScrub service */
+  private final StoreScrubService service;
+
+  public StoreScrubEndpoint(StoreScrubService storeScrubService) {
+    this.service = storeScrubService;
+  }
+
+  @ReadOperation
+  public IntegridadEstado estado() {
+    return service.getEstado();
+  }
+
+  @WriteOperation
+  public IntegridadEstado scrub() {
+    return service.start();
+  }
+
+  @DeleteOperation
+  public IntegridadEstado stop() {
+    return service.stop();
+  }
+}
@@ -0,0 +1,74 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.spring.cache.HazelcastCacheManager;
+
+/**
+ * CacheConfig
+ * 
+ * Hazelcast backed cache configuration. The {@link HazelcastInstance} is
+ * created by Spring Boot from the {@link Config} bean.
+ */
+@Configuration
+@EnableCaching
+@ConditionalOnProperty(prefix = "sgi.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CacheConfig {
+
+  /** Caché de metadatos de {@link org.crue.hercules.sgi.sgdoc.model.Documento} */
+  public static final String DOCUMENTO_CACHE = "documentos";
+
+  @Bean
+  public Config hazelcastConfig(DocumentoCacheProperties properties) {
+    Config config = new Config("sgi-sgdoc");
+    config.setProperty("hazelcast.phone.home.enabled", "false");
+    config.getGroupConfig().setName(properties.getClusterName());
+
+    JoinConfig join = config.getNetworkConfig().getJoin();
+    join.getMulticastConfig().setEnabled(false);
+
+    MapConfig mapConfig = new MapConfig(DOCUMENTO_CACHE)
+        .setTimeToLiveSeconds((int) properties.getTimeToLive().getSeconds())
+        .setEvictionPolicy(properties.getEvictionPolicy())
+        .setMaxSizeConfig(new MaxSizeConfig(properties.getMaxSize(), MaxSizeConfig.MaxSizePolicy.PER_NODE));
+
+    if (properties.getMode() == DocumentoCacheProperties.Mode.CLUSTERED) {
+      config.getNetworkConfig().setPort(properties.getPort());
+      join.getTcpIpConfig().setEnabled(true).setMembers(properties.getMembers());
+
+      if (properties.getNearCache().isEnabled()) {
+        // Documento instances are never modified once loaded, so they can be
+        // shared in object format
+        mapConfig.setNearCacheConfig(new NearCacheConfig(DOCUMENTO_CACHE)
+            .setInMemoryFormat(InMemoryFormat.OBJECT)
+            .setTimeToLiveSeconds((int) properties.getNearCache().getTimeToLive().getSeconds())
+            .setEvictionConfig(new EvictionConfig().setEvictionPolicy(properties.getEvictionPolicy())
+                .setMaximumSizePolicy(EvictionConfig.MaxSizePolicy.ENTRY_COUNT)
+                .setSize(properties.getNearCache().getMaxSize())));
+      }
+    } else {
+      join.getTcpIpConfig().setEnabled(false);
+    }
+
+    config.addMapConfig(mapConfig);
+    return config;
+  }
+
+  @Bean
+  public CacheManager cacheManager(HazelcastInstance hazelcastInstance) {
+    return new HazelcastCacheManager(hazelcastInstance);
+  }
+
+}
@@ -0,0 +1,27 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.delete")
+@Data
+public class DeleteProperties {
+
+  /**
+   * Borra también en segundo plano el fichero de los documentos eliminados de uno
+   * en uno (los borrados en lote siempre se procesan en segundo plano)
+   */
+  private boolean deferred = false;
+
+  /** Intervalo entre el final de un procesamiento de la cola y el siguiente */
+  private Duration interval = Duration.ofMinutes(1);
+
+  /** Número de ficheros leídos de la cola en cada lote */
+  private int batchSize = 500;
+
+  /** Número máximo de documentos que se pueden eliminar en una petición */
+  private int maxIds = 1000;
+}
@@ -0,0 +1,63 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.hazelcast.config.EvictionPolicy;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.cache")
+@Data
+public class DocumentoCacheProperties {
+
+  /** Habilita la caché de metadatos de los documentos */
+  private boolean enabled = true;
+
+  /** Modo de funcionamiento de Hazelcast */
+  private Mode mode = Mode.EMBEDDED;
+
+  /** Tiempo de vida de cada entrada */
+  private Duration timeToLive = Duration.ofMinutes(30);
+
+  /** Número máximo de entradas por nodo */
+  private int maxSize = 10000;
+
+  /** Política de expulsión al alcanzar el número máximo de entradas */
+  private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+  /** Nombre del cluster (modo clustered) */
+  private String clusterName = "sgi-sgdoc";
+
+  /** Puerto de escucha del nodo (modo clustered) */
+  private int port = 5701;
+
+  /** Miembros del cluster, host[:puerto] (modo clustered) */
+  private List<String> members = new ArrayList<>();
+
+  /** Near-cache local de cada nodo (modo clustered) */
+  private NearCache nearCache = new NearCache();
+
+  public enum Mode {
+    /** Un único nodo embebido sin descubrimiento de otros miembros */
+    EMBEDDED,
+    /** Nodo embebido que forma cluster con los miembros configurados */
+    CLUSTERED;
+  }
+
+  @Data
+  public static class NearCache {
+
+    /** Habilita la near-cache */
+    private boolean enabled = true;
+
+    /** Tiempo de vida de cada entrada en la near-cache */
+    private Duration timeToLive = Duration.ofMinutes(5);
+
+    /** Número máximo de entradas en la near-cache */
+    private int maxSize = 1000;
+  }
+}
@@ -0,0 +1,38 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * DownloadConfig
+ * 
+ * Streamed responses (file and ZIP downloads) are written from the bounded
+ * download executor instead of the servlet request threads.
+ * 
+ * The executor is set for the whole Spring MVC async support, so any other
+ * handler returning a <code>Callable</code>, <code>WebAsyncTask</code> (without
+ * its own executor) or <code>StreamingResponseBody</code> also runs on the
+ * download pool and counts against its concurrency and queue capacity. When the
+ * queue is full the request is rejected with
+ * <code>503 Service Unavailable</code> (see
+ * <code>DocumentoController.handleTaskRejected</code>).
+ */
+@Configuration
+public class DownloadConfig implements WebMvcConfigurer {
+
+  private final ThreadPoolTaskExecutor downloadTaskExecutor;
+
+  public DownloadConfig(@Qualifier(ExecutorConfig.DOWNLOAD_TASK_EXECUTOR) ThreadPoolTaskExecutor downloadTaskExecutor) {
+    this.downloadTaskExecutor = downloadTaskExecutor;
+  }
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    // The timeout is set by Spring Boot from spring.mvc.async.request-timeout
+    configurer.setTaskExecutor(downloadTaskExecutor);
+  }
+
+}
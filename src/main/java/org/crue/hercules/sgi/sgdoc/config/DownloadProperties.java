@@ -0,0 +1,33 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.download")
+@Data
+public class DownloadProperties {
+
+  /** Tiempo durante el que los clientes pueden cachear los ficheros descargados */
+  private Duration cacheMaxAge = Duration.ofDays(365);
+
+  /** Permite que las cachés compartidas (proxies) guarden los ficheros */
+  private boolean cachePublic = true;
+
+  /** Número máximo de descargas enviándose a la vez */
+  private int concurrency = 200;
+
+  /**
+   * Número máximo de descargas esperando a que haya un hilo libre (las que
+   * excedan este número se rechazan)
+   */
+  private int queueCapacity = 1000;
+
+  /**
+   * Tiempo que se indica a los clientes (<code>Retry-After</code>) que esperen
+   * antes de reintentar una descarga rechazada por estar la cola llena
+   */
+  private Duration retryAfter = Duration.ofSeconds(5);
+}
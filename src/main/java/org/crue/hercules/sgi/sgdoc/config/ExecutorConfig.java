@@ -0,0 +1,86 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * ExecutorConfig
+ * 
+ * Dedicated executors. Declaring any executor disables the one auto-configured
+ * by Spring Boot, so the application task executor is declared here too.
+ */
+@Configuration
+@EnableAsync
+public class ExecutorConfig {
+
+  /** Executor de escritura de ficheros en el store */
+  public static final String UPLOAD_TASK_EXECUTOR = "uploadTaskExecutor";
+  /** Executor de indexación de los documentos */
+  public static final String SEARCH_TASK_EXECUTOR = "searchTaskExecutor";
+  /** Executor de envío de las descargas */
+  public static final String DOWNLOAD_TASK_EXECUTOR = "downloadTaskExecutor";
+  /** Pool de cálculo de los hashes en árbol */
+  public static final String HASH_FORK_JOIN_POOL = "hashForkJoinPool";
+  /** Executor de comprobación de la integridad de los ficheros */
+  public static final String SCRUB_TASK_EXECUTOR = "scrubTaskExecutor";
+
+  @Lazy
+  @Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+      AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+  public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+    return builder.build();
+  }
+
+  @Bean(name = UPLOAD_TASK_EXECUTOR)
+  public ThreadPoolTaskExecutor uploadTaskExecutor(UploadProperties uploadProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(uploadProperties.getBatchConcurrency());
+    executor.setMaxPoolSize(uploadProperties.getBatchConcurrency());
+    executor.setThreadNamePrefix("sgdoc-upload-");
+    return executor;
+  }
+
+  @Bean(name = SEARCH_TASK_EXECUTOR)
+  public ThreadPoolTaskExecutor searchTaskExecutor(SearchProperties searchProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(searchProperties.getIndexingConcurrency());
+    executor.setMaxPoolSize(searchProperties.getIndexingConcurrency());
+    executor.setThreadNamePrefix("sgdoc-search-");
+    return executor;
+  }
+
+  @Bean(name = DOWNLOAD_TASK_EXECUTOR)
+  public ThreadPoolTaskExecutor downloadTaskExecutor(DownloadProperties downloadProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(downloadProperties.getConcurrency());
+    executor.setMaxPoolSize(downloadProperties.getConcurrency());
+    executor.setQueueCapacity(downloadProperties.getQueueCapacity());
+    executor.setAllowCoreThreadTimeOut(true);
+    executor.setThreadNamePrefix("sgdoc-download-");
+    return executor;
+  }
+
+  @Bean(name = SCRUB_TASK_EXECUTOR)
+  public ThreadPoolTaskExecutor scrubTaskExecutor(ScrubProperties scrubProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(scrubProperties.getWorkers());
+    executor.setMaxPoolSize(scrubProperties.getWorkers());
+    executor.setAllowCoreThreadTimeOut(true);
+    executor.setThreadNamePrefix("sgdoc-scrub-");
+    return executor;
+  }
+
+  @Bean(name = HASH_FORK_JOIN_POOL, destroyMethod = "shutdown")
+  public ForkJoinPool hashForkJoinPool(StoreProperties storeProperties) {
+    return new ForkJoinPool(storeProperties.getTreeHash().getParallelism());
+  }
+
+}
@@ -0,0 +1,37 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.reconcile")
+@Data
+public class ReconcileProperties {
+
+  /** Concilia periódicamente los ficheros del store con los documentos */
+  private boolean enabled = false;
+
+  /** Tiempo desde el arranque hasta la primera conciliación */
+  private Duration initialDelay = Duration.ofHours(2);
+
+  /** Intervalo entre el final de una conciliación y el inicio de la siguiente */
+  private Duration interval = Duration.ofDays(1);
+
+  /** Días (hasta hoy) que se concilian en las ejecuciones periódicas */
+  private int days = 7;
+
+  /** Elimina los ficheros huérfanos (si no, sólo se informa de ellos) */
+  private boolean reclaim = false;
+
+  /**
+   * Antigüedad mínima de un fichero sin documento para considerarlo huérfano
+   * (los ficheros se escriben antes de confirmar la transacción que crea el
+   * documento)
+   */
+  private Duration gracePeriod = Duration.ofHours(24);
+
+  /** Número de documentos leídos de la base de datos en cada lote */
+  private int batchSize = 1000;
+}
@@ -0,0 +1,15 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * SchedulingConfig
+ * 
+ * Enables the background tasks.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+}
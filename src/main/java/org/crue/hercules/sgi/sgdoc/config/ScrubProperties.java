@@ -0,0 +1,31 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.scrub")
+@Data
+public class ScrubProperties {
+
+  /** Comprueba periódicamente que los ficheros del store coinciden con su hash */
+  private boolean enabled = false;
+
+  /** Tiempo desde el arranque hasta la primera comprobación */
+  private Duration initialDelay = Duration.ofHours(1);
+
+  /** Intervalo entre el final de una comprobación y el inicio de la siguiente */
+  private Duration interval = Duration.ofDays(7);
+
+  /** Número de documentos leídos de la base de datos en cada lote */
+  private int batchSize = 500;
+
+  /** Número de ficheros comprobados en paralelo */
+  private int workers = 2;
+
+  /** Bytes por segundo leídos del store como máximo (entre todos los hilos) */
+  private DataSize bytesPerSecond = DataSize.ofMegabytes(20);
+}
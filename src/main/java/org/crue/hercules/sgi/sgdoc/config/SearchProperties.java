@@ -0,0 +1,42 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.search")
+@Data
+public class SearchProperties {
+
+  /**
+   * Indexa el contenido de los documentos para la búsqueda por texto. Solo se
+   * debe activar en un nodo
+   */
+  private boolean enabled = false;
+
+  /**
+   * Directorio del índice. Solo un nodo debe tener activada la búsqueda sobre
+   * este directorio
+   */
+  private String path;
+
+  /** Número de documentos que se indexan en paralelo */
+  private int indexingConcurrency = 1;
+
+  /** Número máximo de caracteres del contenido de cada documento que se indexan */
+  private int maxContentLength = 1_000_000;
+
+  /** Intervalo entre confirmaciones (commits) del índice a disco */
+  private Duration commitInterval = Duration.ofMinutes(1);
+
+  /**
+   * Reconstruye el índice al arrancar si no existe o no tiene los mismos
+   * documentos que la tabla
+   */
+  private boolean rebuildOnStartup = true;
+
+  /** Número de documentos que se leen de la tabla en cada lote de la reconstrucción */
+  private int rebuildBatchSize = 500;
+}
@@ -1,5 +1,9 @@
 package org.crue.hercules.sgi.sgdoc.config;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import lombok.Data;
@@ -9,4 +13,51 @@ import lombok.Data;
 public class StoreProperties {
 
   private String path;
+
+  /** Modo de almacenamiento de los ficheros */
+  private Mode mode = Mode.DEFAULT;
+
+  /** Organización de los ficheros en el store (modo DEFAULT) */
+  private Layout layout = Layout.DATE;
+
+  /** Compresión de los ficheros en el store */
+  private Compression compression = new Compression();
+
+  /** Hash en árbol (Merkle) de los ficheros */
+  private TreeHash treeHash = new TreeHash();
+
+  public enum Mode {
+    /** Un fichero por cada {@link org.crue.hercules.sgi.sgdoc.model.Documento} */
+    DEFAULT,
+    /** Un único fichero por cada contenido distinto (hash) */
+    DEDUPLICATED;
+  }
+
+  public enum Layout {
+    /** Un directorio por día de creación (YYYY/MM/dd) */
+    DATE,
+    /** Dos niveles de directorios según el hash del documentoRef */
+    SHARDED;
+  }
+
+  @Data
+  public static class Compression {
+
+    /** Comprime (gzip) los ficheros de los tipos indicados */
+    private boolean enabled = false;
+
+    /** Prefijos de los tipos (MIME) de los ficheros que se comprimen */
+    private List<String> types = new ArrayList<>(
+        Arrays.asList("text/", "application/json", "application/xml", "application/csv"));
+  }
+
+  @Data
+  public static class TreeHash {
+
+    /** Calcula la raíz del árbol de hashes al guardar los ficheros */
+    private boolean enabled = false;
+
+    /** Número de hilos que calculan los hashes de los bloques */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+  }
 }
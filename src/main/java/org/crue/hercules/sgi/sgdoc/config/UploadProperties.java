@@ -0,0 +1,38 @@
+package org.crue.hercules.sgi.sgdoc.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+@ConfigurationProperties(prefix = "sgi.upload")
+@Data
+public class UploadProperties {
+
+  /** Número máximo de ficheros que se escriben en paralelo en el store */
+  private int batchConcurrency = 4;
+
+  /** Tamaño máximo de los ficheros subidos en streaming (sin multipart) */
+  private DataSize maxFileSize = DataSize.ofMegabytes(10);
+
+  /** Subidas por fragmentos */
+  private Session session = new Session();
+
+  @Data
+  public static class Session {
+
+    /** Tamaño de cada fragmento */
+    private DataSize chunkSize = DataSize.ofMegabytes(8);
+
+    /** Tamaño máximo de los ficheros subidos por fragmentos */
+    private DataSize maxFileSize = DataSize.ofGigabytes(10);
+
+    /** Tiempo sin recibir fragmentos tras el que caduca la subida */
+    private Duration timeout = Duration.ofHours(24);
+
+    /** Intervalo entre limpiezas de las subidas caducadas */
+    private Duration cleanupInterval = Duration.ofMinutes(15);
+  }
+}
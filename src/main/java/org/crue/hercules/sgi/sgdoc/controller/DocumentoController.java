@@ -1,30 +1,69 @@
 package org.crue.hercules.sgi.sgdoc.controller;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.crue.hercules.sgi.framework.web.bind.annotation.RequestPageable;
+import org.crue.hercules.sgi.sgdoc.actuate.DocumentoMetrics;
+import org.crue.hercules.sgi.sgdoc.config.DownloadProperties;
+import org.crue.hercules.sgi.sgdoc.config.UploadProperties;
+import org.crue.hercules.sgi.sgdoc.dto.DocumentoBatchResult;
+import org.crue.hercules.sgi.sgdoc.dto.KeysetPage;
 import org.crue.hercules.sgi.sgdoc.model.Documento;
 import org.crue.hercules.sgi.sgdoc.service.DocumentoService;
+import org.crue.hercules.sgi.sgdoc.utils.CountingOutputStream;
+import org.crue.hercules.sgi.sgdoc.utils.SizeLimitInputStream;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.crue.hercules.sgi.sgdoc.utils.ZipUtils;
 import org.springframework.core.io.Resource;
-import org.springframework.data.domain.Page;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -35,16 +74,37 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class DocumentoController {
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  /**
+   * Versión de la representación JSON de {@link Documento}, que forma parte del
+   * ETag de los metadatos. Debe cambiarse al añadir, quitar o cambiar campos.
+   */
+  private static final String METADATA_VERSION = "1";
+  private static final String ZIP_CONTENT_TYPE = "application/zip";
+
   /** Documento service */
   private final DocumentoService service;
+  /** Download properties */
+  private final DownloadProperties downloadProperties;
+  /** Upload properties */
+  private final UploadProperties uploadProperties;
+  /** Métricas */
+  private final DocumentoMetrics metrics;
 
   /**
    * Instancia un nuevo DocumentoController.
    * 
-   * @param documentoService {@link DocumentoService}.
+   * @param documentoService   {@link DocumentoService}.
+   * @param downloadProperties {@link DownloadProperties}.
+   * @param uploadProperties   {@link UploadProperties}.
+   * @param metrics            {@link DocumentoMetrics}.
    */
-  public DocumentoController(DocumentoService documentoService) {
+  public DocumentoController(DocumentoService documentoService, DownloadProperties downloadProperties,
+      UploadProperties uploadProperties, DocumentoMetrics metrics) {
     this.service = documentoService;
+    this.downloadProperties = downloadProperties;
+    this.uploadProperties = uploadProperties;
+    this.metrics = metrics;
   }
 
   /**
@@ -56,14 +116,7 @@ public class DocumentoController {
   @PostMapping
   public ResponseEntity<Documento> create(@RequestPart("archivo") MultipartFile archivo) {
     log.debug("create(MultipartFile archivo) - start");
-    Documento documento = new Documento();
-    documento.setNombre(archivo.getOriginalFilename());
-    documento.setFechaCreacion(LocalDateTime.now());
-    documento.setAutorRef("anonymous");
-    documento.setVersion(1);
-
-    String[] contentType = (archivo.getContentType().split(";"));
-    documento.setTipo(contentType[0]);
+    Documento documento = newDocumento(archivo.getOriginalFilename(), archivo.getContentType());
     Documento documentoCreado = service.create(documento, archivo.getResource());
 
     log.debug("create(MultipartFile archivo) - end");
@@ -71,65 +124,342 @@ public class DocumentoController {
     return new ResponseEntity<>(documentoCreado, HttpStatus.CREATED);
   }
 
+  /**
+   * Crea un nuevo {@link Documento} con el contenido del cuerpo de la petición.
+   * 
+   * A diferencia de la subida multipart, el contenido se escribe directamente en
+   * el store a medida que se recibe, sin pasar por un fichero temporal del
+   * contenedor de servlets. El tamaño máximo se comprueba a la vez que se lee.
+   * 
+   * @param request            la petición.
+   * @param contentType        tipo del documento (<code>Content-Type</code>).
+   * @param contentDisposition <code>Content-Disposition</code> con el nombre
+   *                           del documento.
+   * @param nombre             nombre del documento (si no se indica en
+   *                           <code>Content-Disposition</code>).
+   * @return {@link Documento} creado.
+   * @throws IOException si no se puede leer el cuerpo de la petición.
+   */
+  @PutMapping
+  public ResponseEntity<Documento> create(HttpServletRequest request,
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+      @RequestHeader(name = HttpHeaders.CONTENT_DISPOSITION, required = false) String contentDisposition,
+      @RequestParam(name = "nombre", required = false) String nombre) throws IOException {
+    log.debug("create(HttpServletRequest request, String contentType, String contentDisposition, String nombre) - start");
+    long maxFileSize = uploadProperties.getMaxFileSize().toBytes();
+    if (request.getContentLengthLong() > maxFileSize) {
+      throw new MaxUploadSizeExceededException(maxFileSize);
+    }
+
+    if (contentDisposition != null && ContentDisposition.parse(contentDisposition).getFilename() != null) {
+      nombre = ContentDisposition.parse(contentDisposition).getFilename();
+    }
+    Assert.hasText(nombre, "nombre is required (Content-Disposition filename or nombre parameter)");
+
+    Documento documento = newDocumento(nombre, contentType);
+    Documento documentoCreado = service.create(documento,
+        new SizeLimitInputStream(request.getInputStream(), maxFileSize));
+
+    log.debug("create(HttpServletRequest request, String contentType, String contentDisposition, String nombre) - end");
+
+    return new ResponseEntity<>(documentoCreado, HttpStatus.CREATED);
+  }
+
+  /**
+   * Crea un nuevo {@link Documento} por cada uno de los archivos recibidos.
+   * 
+   * @param archivos los documentos.
+   * @return el resultado de la creación de cada {@link Documento}, en el mismo
+   *         orden que los archivos. El estado es <code>201 Created</code> si se
+   *         han creado todos y <code>207 Multi-Status</code> si alguno ha
+   *         fallado.
+   */
+  @PostMapping("/batch")
+  public ResponseEntity<List<DocumentoBatchResult>> createAll(@RequestPart("archivo") List<MultipartFile> archivos) {
+    log.debug("createAll(List<MultipartFile> archivos) - start");
+    List<Documento> documentos = new ArrayList<>(archivos.size());
+    List<Resource> resources = new ArrayList<>(archivos.size());
+    for (MultipartFile archivo : archivos) {
+      documentos.add(newDocumento(archivo.getOriginalFilename(), archivo.getContentType()));
+      resources.add(archivo.getResource());
+    }
+
+    List<DocumentoBatchResult> results = service.createAll(documentos, resources);
+
+    boolean allCreated = results.stream().allMatch(result -> result.getStatus() == HttpStatus.CREATED.value());
+    log.debug("createAll(List<MultipartFile> archivos) - end");
+    return new ResponseEntity<>(results, allCreated ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS);
+  }
+
   /**
    * Devuelve una lista paginada y filtrada de {@link Documento}.
    * 
+   * Con <code>count=false</code> no se calcula el número total de elementos
+   * (no se ejecuta la consulta <code>COUNT</code>), pensado para listados con
+   * scroll infinito: se devuelve un {@link Slice}, sin totales, que sólo indica
+   * si hay página siguiente (<code>last</code>).
+   * 
+   * Con <code>fields</code> (por ejemplo <code>fields=documentoRef,nombre</code>)
+   * sólo se consultan y devuelven esos campos de cada {@link Documento}.
+   * 
    * @param query  filtro de búsqueda.
    * @param paging {@link Pageable}.
+   * @param count  indica si se calcula el número total de elementos.
+   * @param fields campos a devolver (todos si no se indica).
    * @return el listado de entidades {@link Documento} paginadas y filtradas.
    */
   @GetMapping()
-  public ResponseEntity<Page<Documento>> findAll(@RequestParam(name = "q", required = false) String query,
-      @RequestPageable(sort = "s") Pageable paging) {
-    log.debug("findAll(String query, Pageable paging) - start");
+  public ResponseEntity<Slice<?>> findAll(@RequestParam(name = "q", required = false) String query,
+      @RequestPageable(sort = "s") Pageable paging,
+      @RequestParam(name = "count", defaultValue = "true") boolean count,
+      @RequestParam(name = "fields", required = false) List<String> fields) {
+    log.debug("findAll(String query, Pageable paging, boolean count, List<String> fields) - start");
 
-    Page<Documento> page = service.findAll(query, paging);
+    Slice<?> page;
+    if (fields != null && !fields.isEmpty()) {
+      page = service.findAll(query, paging, fields, count);
+    } else {
+      page = count ? service.findAll(query, paging) : service.findSlice(query, paging);
+    }
 
     if (page.isEmpty()) {
-      log.debug("findAll(String query, Pageable paging) - end");
+      log.debug("findAll(String query, Pageable paging, boolean count, List<String> fields) - end");
       return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
-    log.debug("findAll(String query, Pageable paging) - end");
+    log.debug("findAll(String query, Pageable paging, boolean count, List<String> fields) - end");
+    return new ResponseEntity<>(page, HttpStatus.OK);
+  }
+
+  /**
+   * Devuelve una página filtrada de {@link Documento} ordenados por fecha de
+   * creación. Para recorrer el listado se pide cada página con el cursor devuelto
+   * en la anterior, y el coste de cada página no depende de su posición.
+   * 
+   * @param query  filtro de búsqueda.
+   * @param cursor cursor devuelto en la página anterior (vacío para la primera).
+   * @param size   tamaño de la página.
+   * @return la página de {@link Documento} y el cursor de la siguiente.
+   */
+  @GetMapping("/keyset")
+  public ResponseEntity<KeysetPage<Documento>> findAll(@RequestParam(name = "q", required = false) String query,
+      @RequestParam(name = "cursor", required = false) String cursor,
+      @RequestParam(name = "size", defaultValue = "20") int size) {
+    log.debug("findAll(String query, String cursor, int size) - start");
+
+    KeysetPage<Documento> page = service.findAll(query, cursor, size);
+
+    if (page.getContent().isEmpty()) {
+      log.debug("findAll(String query, String cursor, int size) - end");
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    log.debug("findAll(String query, String cursor, int size) - end");
     return new ResponseEntity<>(page, HttpStatus.OK);
   }
 
   /**
    * Devuelve la {@link Documento} con el id indicado.
    * 
+   * La respuesta incluye un <code>ETag</code> débil obtenido del hash del
+   * fichero y de la versión de la representación de los metadatos (distinto del
+   * <code>ETag</code> del fichero), por lo que las peticiones con
+   * <code>If-None-Match</code> se responden con <code>304 Not Modified</code>.
+   * 
    * @param id Identificador de {@link Documento}.
    * @return {@link Documento} correspondiente al id
    */
   @GetMapping("/{id}")
-  public Documento findById(@PathVariable String id) {
+  public ResponseEntity<Documento> findById(@PathVariable String id) {
     log.debug("findById(String id) - start");
-    Documento returnValue = service.findById(id);
+    Timer.Sample sample = metrics.startFind();
+    Documento documento = null;
+    try {
+      documento = service.findById(id);
+    } finally {
+      metrics.stopFind(sample, documento != null ? documento.getTipo() : null, documento == null);
+    }
+
+    HttpHeaders headers = new HttpHeaders();
+    String eTag = getMetadataETag(documento);
+    if (eTag != null) {
+      headers.setETag(eTag);
+    }
+    ResponseEntity<Documento> returnValue = ResponseEntity.ok().headers(headers).body(documento);
     log.debug("findById(String id) - end");
     return returnValue;
   }
 
   /**
-   * Devuelve el {@link Resource} del {@link Documento} con el id indicado.
+   * Devuelve el fichero del {@link Documento} con el id indicado.
    * 
-   * @param id Identificador de {@link Documento}.
-   * @return {@link Resource} correspondiente al id del {@link Documento}.
+   * El fichero se envía desde el executor de descargas, sin ocupar el hilo de la
+   * petición mientras dura la transferencia, de forma que los clientes lentos no
+   * agotan los hilos del servidor.
+   * 
+   * Los ficheros no cambian una vez creados, por lo que se pueden cachear
+   * indefinidamente y las peticiones con <code>If-None-Match</code> se responden
+   * con <code>304 Not Modified</code>.
+   * 
+   * Los ficheros comprimidos en el store se envían tal cual con
+   * <code>Content-Encoding: gzip</code> si el cliente lo acepta y se
+   * descomprimen al vuelo si no.
+   * 
+   * Las peticiones <code>HEAD</code> se responden sólo con las cabeceras, sin
+   * leer el fichero.
+   * 
+   * @param id             Identificador de {@link Documento}.
+   * @param method         método de la petición.
+   * @param requestHeaders cabeceras de la petición.
+   * @return el fichero correspondiente al id del {@link Documento}.
    */
-  @GetMapping("/{id}/archivo")
-  public ResponseEntity<Resource> findDocumentoArchivo(@PathVariable String id) {
-    log.debug("findDocumentoArchivo(String id) - start");
+  @GetMapping(path = "/{id}/archivo", headers = "!" + HttpHeaders.RANGE)
+  public ResponseEntity<StreamingResponseBody> findDocumentoArchivo(@PathVariable String id, HttpMethod method,
+      @RequestHeader HttpHeaders requestHeaders) {
+    log.debug("findDocumentoArchivo(String id, HttpMethod method, HttpHeaders requestHeaders) - start");
 
     Documento documento = service.findById(id);
 
     Resource resource = service.getDocumentoResource(documento);
 
-    HttpHeaders headers = new HttpHeaders();
+    HttpHeaders headers = getArchivoHeaders(documento);
 
-    headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + documento.getNombre() + "\"");
-    ResponseEntity<Resource> response = ResponseEntity.ok().headers(headers)
-        .contentType(
-            MediaType.parseMediaType(documento.getTipo()))
-        .body(resource);
+    Resource body;
+    if (StoreUtils.GZIP_ENCODING.equals(documento.getCodificacion())) {
+      body = getGzipArchivo(documento, resource, requestHeaders, headers);
+    } else {
+      headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+      try {
+        headers.setContentLength(resource.contentLength());
+      } catch (IOException io) {
+        throw new RuntimeException(io);
+      }
+      body = resource;
+    }
+
+    if (isNotModified(requestHeaders, headers.getETag(), headers.getLastModified())) {
+      headers.remove(HttpHeaders.CONTENT_LENGTH);
+      log.debug("findDocumentoArchivo(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+    }
+
+    if (method == HttpMethod.HEAD) {
+      log.debug("findDocumentoArchivo(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
+      return ResponseEntity.ok().headers(headers).contentType(MediaType.parseMediaType(documento.getTipo())).build();
+    }
+
+    String tipo = documento.getTipo();
+    StreamingResponseBody stream = download(tipo, out -> copy(body, 0, Long.MAX_VALUE, out, tipo));
+
+    ResponseEntity<StreamingResponseBody> response = ResponseEntity.ok().headers(headers)
+        .contentType(MediaType.parseMediaType(documento.getTipo())).body(stream);
+
+    log.debug("findDocumentoArchivo(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
+
+    return response;
+  }
+
+  /**
+   * Devuelve los rangos solicitados del fichero del {@link Documento} con el id
+   * indicado.
+   * 
+   * Las peticiones con cabecera <code>Range</code> (uno o varios rangos) se
+   * responden con <code>206 Partial Content</code>, salvo que la cabecera
+   * <code>If-Range</code> no se corresponda con la versión actual del fichero,
+   * en cuyo caso se devuelve el fichero completo. Los ficheros comprimidos en el
+   * store no admiten rangos y se devuelven completos. Como el resto de
+   * descargas, los rangos se envían desde el executor de descargas.
+   * 
+   * @param id             Identificador de {@link Documento}.
+   * @param method         método de la petición.
+   * @param requestHeaders cabeceras de la petición.
+   * @return los rangos del fichero correspondiente al id del {@link Documento}.
+   */
+  @GetMapping(path = "/{id}/archivo", headers = HttpHeaders.RANGE)
+  public ResponseEntity<StreamingResponseBody> findDocumentoArchivoRango(@PathVariable String id,
+      HttpMethod method, @RequestHeader HttpHeaders requestHeaders) {
+    log.debug("findDocumentoArchivoRango(String id, HttpMethod method, HttpHeaders requestHeaders) - start");
+
+    Documento documento = service.findById(id);
+
+    Resource resource = service.getDocumentoResource(documento);
+
+    HttpHeaders headers = getArchivoHeaders(documento);
+
+    boolean gzip = StoreUtils.GZIP_ENCODING.equals(documento.getCodificacion());
+    Resource body = resource;
+    if (gzip) {
+      body = getGzipArchivo(documento, resource, requestHeaders, headers);
+    } else {
+      headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+    }
+
+    // The conditional headers are evaluated before the Range header
+    if (isNotModified(requestHeaders, headers.getETag(), headers.getLastModified())) {
+      headers.remove(HttpHeaders.CONTENT_LENGTH);
+      log.debug("findDocumentoArchivoRango(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+    }
+
+    String tipo = documento.getTipo();
+    HttpStatus status = HttpStatus.OK;
+    MediaType contentType = MediaType.parseMediaType(tipo);
+    List<ResourceRegion> regions = Collections.emptyList();
+    long contentLength = -1;
+    if (!gzip) {
+      try {
+        contentLength = resource.contentLength();
+      } catch (IOException io) {
+        throw new RuntimeException(io);
+      }
+      if (isIfRangeSatisfied(requestHeaders, headers.getETag(), headers.getLastModified())) {
+        try {
+          regions = HttpRange.toResourceRegions(requestHeaders.getRange(), resource);
+        } catch (IllegalArgumentException e) {
+          headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+          log.debug("findDocumentoArchivoRango(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
+          return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+      }
+    }
+
+    StreamingResponseBody stream;
+    if (regions.isEmpty()) {
+      // Compressed in the store, or a stale If-Range: the full content
+      if (contentLength >= 0) {
+        headers.setContentLength(contentLength);
+      }
+      Resource full = body;
+      stream = download(tipo, out -> copy(full, 0, Long.MAX_VALUE, out, tipo));
+    } else if (regions.size() == 1) {
+      ResourceRegion region = regions.get(0);
+      status = HttpStatus.PARTIAL_CONTENT;
+      headers.set(HttpHeaders.CONTENT_RANGE, getContentRange(region, contentLength));
+      headers.setContentLength(region.getCount());
+      stream = download(tipo, out -> copy(resource, region.getPosition(), region.getCount(), out, tipo));
+    } else {
+      status = HttpStatus.PARTIAL_CONTENT;
+      String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+      contentType = MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary);
+      List<ResourceRegion> ranges = regions;
+      long length = contentLength;
+      stream = download(tipo, out -> {
+        for (ResourceRegion region : ranges) {
+          writeAscii(out, "\r\n--" + boundary + "\r\n" + HttpHeaders.CONTENT_TYPE + ": " + tipo + "\r\n"
+              + HttpHeaders.CONTENT_RANGE + ": " + getContentRange(region, length) + "\r\n\r\n");
+          copy(resource, region.getPosition(), region.getCount(), out, tipo);
+        }
+        writeAscii(out, "\r\n--" + boundary + "--\r\n");
+      });
+    }
+
+    if (method == HttpMethod.HEAD) {
+      log.debug("findDocumentoArchivoRango(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
+      return ResponseEntity.status(status).headers(headers).contentType(contentType).build();
+    }
+
+    ResponseEntity<StreamingResponseBody> response = ResponseEntity.status(status).headers(headers)
+        .contentType(contentType).body(stream);
 
-    log.debug("findDocumentoArchivo(String id) - end");
+    log.debug("findDocumentoArchivoRango(String id, HttpMethod method, HttpHeaders requestHeaders) - end");
 
     return response;
   }
@@ -138,26 +468,153 @@ public class DocumentoController {
    * Devuelve una lista paginada y filtrada de {@link Documento} que tienen alguno
    * de los ids de la lista.
    * 
+   * Con <code>count=false</code> no se calcula el número total de elementos (se
+   * devuelve un {@link Slice}, sin totales) y con <code>fields</code> sólo se
+   * consultan y devuelven esos campos.
+   * 
    * @param ids    identificadores de {@link Documento}.
    * @param query  filtro de búsqueda.
    * @param paging {@link Pageable}.
+   * @param count  indica si se calcula el número total de elementos.
+   * @param fields campos a devolver (todos si no se indica).
    * @return el listado de entidades {@link Documento} paginadas y filtradas.
    */
   @GetMapping("/bydocumentorefs/{ids}")
-  public ResponseEntity<Page<Documento>> findByDocumentoIds(@PathVariable String ids,
-      @RequestParam(name = "q", required = false) String query, @RequestPageable(sort = "s") Pageable paging) {
-    log.debug("findByDocumentoIds(String ids, String query, Pageable paging) - start");
+  public ResponseEntity<Slice<?>> findByDocumentoIds(@PathVariable String ids,
+      @RequestParam(name = "q", required = false) String query, @RequestPageable(sort = "s") Pageable paging,
+      @RequestParam(name = "count", defaultValue = "true") boolean count,
+      @RequestParam(name = "fields", required = false) List<String> fields) {
+    log.debug("findByDocumentoIds(String ids, String query, Pageable paging, boolean count, List<String> fields) - start");
     List<String> idsList = Arrays.asList(ids.split("\\|"));
-    Page<Documento> page = service.findByDocumentoIds(idsList, query, paging);
+    Slice<?> page;
+    if (fields != null && !fields.isEmpty()) {
+      page = service.findByDocumentoIds(idsList, query, paging, fields, count);
+    } else {
+      page = count ? service.findByDocumentoIds(idsList, query, paging)
+          : service.findSliceByDocumentoIds(idsList, query, paging);
+    }
 
     if (page.isEmpty()) {
-      log.debug("findByDocumentoIds(String ids, String query, Pageable paging) - end");
+      log.debug("findByDocumentoIds(String ids, String query, Pageable paging, boolean count, List<String> fields) - end");
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    log.debug("findByDocumentoIds(String ids, String query, Pageable paging, boolean count, List<String> fields) - end");
+    return new ResponseEntity<>(page, HttpStatus.OK);
+  }
+
+  /**
+   * Devuelve los {@link Documento} cuyo fichero tiene el hash indicado. Permite
+   * comprobar si un contenido ya existe antes de subirlo.
+   * 
+   * @param hash hash (SHA-256 hexadecimal) del fichero.
+   * @return los {@link Documento} con ese hash.
+   */
+  @GetMapping("/byhash/{hash}")
+  public ResponseEntity<List<Documento>> findByHash(@PathVariable String hash) {
+    log.debug("findByHash(String hash) - start");
+    List<Documento> documentos = service.findByHash(hash);
+
+    if (documentos.isEmpty()) {
+      log.debug("findByHash(String hash) - end");
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    log.debug("findByHash(String hash) - end");
+    return new ResponseEntity<>(documentos, HttpStatus.OK);
+  }
+
+  /**
+   * Devuelve los {@link Documento} que tienen alguno de los ids recibidos en el
+   * cuerpo de la petición. Admite listas de ids de cualquier tamaño (sin los
+   * límites de longitud de la URL).
+   * 
+   * @param ids   identificadores de {@link Documento}.
+   * @param query filtro de búsqueda.
+   * @return los {@link Documento} encontrados, en el orden de los ids.
+   */
+  @PostMapping("/bydocumentorefs")
+  public ResponseEntity<List<Documento>> findByDocumentoIds(@RequestBody List<String> ids,
+      @RequestParam(name = "q", required = false) String query) {
+    log.debug("findByDocumentoIds(List<String> ids, String query) - start");
+    List<Documento> documentos = service.findByDocumentoRefs(ids, query);
+
+    if (documentos.isEmpty()) {
+      log.debug("findByDocumentoIds(List<String> ids, String query) - end");
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    log.debug("findByDocumentoIds(List<String> ids, String query) - end");
+    return new ResponseEntity<>(documentos, HttpStatus.OK);
+  }
+
+  /**
+   * Devuelve una página filtrada de {@link Documento} que tienen alguno de los
+   * ids de la lista, ordenados por fecha de creación y paginados por cursor.
+   * 
+   * @param ids    identificadores de {@link Documento} separados por "|".
+   * @param query  filtro de búsqueda.
+   * @param cursor cursor devuelto en la página anterior (vacío para la primera).
+   * @param size   tamaño de la página.
+   * @return la página de {@link Documento} y el cursor de la siguiente.
+   */
+  @GetMapping("/bydocumentorefs/{ids}/keyset")
+  public ResponseEntity<KeysetPage<Documento>> findByDocumentoIds(@PathVariable String ids,
+      @RequestParam(name = "q", required = false) String query,
+      @RequestParam(name = "cursor", required = false) String cursor,
+      @RequestParam(name = "size", defaultValue = "20") int size) {
+    log.debug("findByDocumentoIds(String ids, String query, String cursor, int size) - start");
+    List<String> idsList = Arrays.asList(ids.split("\\|"));
+    KeysetPage<Documento> page = service.findByDocumentoIds(idsList, query, cursor, size);
+
+    if (page.getContent().isEmpty()) {
+      log.debug("findByDocumentoIds(String ids, String query, String cursor, int size) - end");
       return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
-    log.debug("findByDocumentoIds(String ids, String query, Pageable paging) - end");
+    log.debug("findByDocumentoIds(String ids, String query, String cursor, int size) - end");
     return new ResponseEntity<>(page, HttpStatus.OK);
   }
 
+  /**
+   * Devuelve un ZIP con los ficheros de los {@link Documento} con los ids
+   * indicados.
+   * 
+   * El ZIP se escribe directamente en la respuesta a medida que se leen los
+   * ficheros, por lo que la memoria utilizada no depende de su tamaño. Los
+   * ficheros de tipos que ya están comprimidos no se vuelven a comprimir. Las
+   * entradas llevan sólo el nombre del fichero, sin directorios.
+   * 
+   * @param ids identificadores de {@link Documento} separados por "|".
+   * @return el ZIP con los ficheros.
+   */
+  @GetMapping("/bydocumentorefs/{ids}/archivos")
+  public ResponseEntity<StreamingResponseBody> findDocumentoArchivos(@PathVariable String ids) {
+    log.debug("findDocumentoArchivos(String ids) - start");
+    List<String> idsList = Arrays.asList(ids.split("\\|"));
+    List<Documento> documentos = service.findAllByDocumentoRefs(idsList);
+    // Resolve every file before the response is committed, so that a missing
+    // file is reported with the right status
+    List<Resource> resources = documentos.stream().map(service::getDocumentoResource).collect(Collectors.toList());
+
+    StreamingResponseBody body = download(ZIP_CONTENT_TYPE, out -> {
+      ZipOutputStream zip = new ZipOutputStream(out);
+      Set<String> names = new HashSet<>();
+      for (int i = 0; i < documentos.size(); i++) {
+        Documento documento = documentos.get(i);
+        String nombre = ZipUtils.baseName(documento.getNombre(), documento.getDocumentoRef());
+        ZipUtils.writeEntry(zip, ZipUtils.uniqueName(nombre, names), resources.get(i),
+            ZipUtils.isCompressed(documento.getTipo()));
+      }
+      zip.finish();
+      zip.flush();
+    });
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"documentos.zip\"");
+    ResponseEntity<StreamingResponseBody> response = ResponseEntity.ok().headers(headers)
+        .contentType(MediaType.parseMediaType(ZIP_CONTENT_TYPE)).body(body);
+
+    log.debug("findDocumentoArchivos(String ids) - end");
+    return response;
+  }
+
   /**
    * Elimina el {@link Documento} con id indicado.
    * 
@@ -171,4 +628,245 @@ public class DocumentoController {
     log.debug("deleteById(Long id) - end");
   }
 
+  /**
+   * Elimina los {@link Documento} con los ids indicados en el cuerpo de la
+   * petición (como máximo <code>sgi.delete.max-ids</code>). Los ficheros se
+   * borran en segundo plano.
+   * 
+   * @param ids identificadores de {@link Documento}.
+   * @return los ids de los {@link Documento} eliminados.
+   */
+  @PostMapping("/delete")
+  public ResponseEntity<List<String>> deleteAll(@RequestBody List<String> ids) {
+    log.debug("deleteAll(List<String> ids) - start");
+    List<String> deleted = service.deleteAll(ids);
+
+    if (deleted.isEmpty()) {
+      log.debug("deleteAll(List<String> ids) - end");
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    log.debug("deleteAll(List<String> ids) - end");
+    return new ResponseEntity<>(deleted, HttpStatus.OK);
+  }
+
+  /**
+   * Responde con <code>503 Service Unavailable</code> cuando la cola del
+   * executor de descargas (o de subidas) está llena, indicando al cliente cuándo
+   * reintentar.
+   * 
+   * @param e la {@link TaskRejectedException}.
+   * @return la respuesta con la cabecera <code>Retry-After</code>.
+   */
+  @ExceptionHandler(TaskRejectedException.class)
+  public ResponseEntity<Void> handleTaskRejected(TaskRejectedException e) {
+    log.warn("Request rejected, executor queue full: {}", e.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(downloadProperties.getRetryAfter().getSeconds())).build();
+  }
+
+  private Documento newDocumento(String nombre, String contentType) {
+    Documento documento = new Documento();
+    documento.setNombre(nombre);
+    documento.setFechaCreacion(LocalDateTime.now());
+    documento.setAutorRef("anonymous");
+    documento.setVersion(1);
+    documento.setTipo(contentType.split(";")[0]);
+    return documento;
+  }
+
+  private long getLastModified(Documento documento) {
+    if (documento.getFechaCreacion() == null) {
+      return -1;
+    }
+    return documento.getFechaCreacion().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  /**
+   * Los ficheros son inmutables, así que el hash de su contenido es un ETag
+   * fuerte válido para el fichero.
+   */
+  private String getETag(Documento documento) {
+    if (documento.getHash() == null) {
+      return null;
+    }
+    return "\"" + documento.getHash() + "\"";
+  }
+
+  /**
+   * Los metadatos tampoco cambian, pero su representación JSON sí puede cambiar
+   * entre versiones del servicio, por lo que su ETag (débil) incluye la versión
+   * de la representación y no coincide nunca con el del fichero.
+   */
+  private String getMetadataETag(Documento documento) {
+    if (documento.getHash() == null) {
+      return null;
+    }
+    return "W/\"" + documento.getHash() + "-v" + METADATA_VERSION + "\"";
+  }
+
+  /**
+   * Cuerpo de una descarga que se escribe desde el executor de descargas y
+   * registra sus métricas (duración y bytes enviados).
+   */
+  private StreamingResponseBody download(String tipo, StreamingResponseBody writer) {
+    return out -> {
+      Timer.Sample sample = metrics.startDownload();
+      CountingOutputStream counting = new CountingOutputStream(out);
+      boolean error = true;
+      try {
+        writer.writeTo(counting);
+        error = false;
+      } finally {
+        metrics.stopDownload(sample, tipo, counting.getCount(), error);
+      }
+    };
+  }
+
+  /**
+   * Copia <code>count</code> bytes (o hasta el final) del {@link Resource} a
+   * partir de <code>position</code>.
+   */
+  private void copy(Resource resource, long position, long count, OutputStream out, String tipo)
+      throws IOException {
+    long start = System.nanoTime();
+    try (InputStream in = resource.getInputStream()) {
+      long skipped = 0;
+      while (skipped < position) {
+        long bytesCount = in.skip(position - skipped);
+        if (bytesCount <= 0) {
+          throw new EOFException("Unexpected end of file at " + skipped);
+        }
+        skipped += bytesCount;
+      }
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long remaining = count;
+      int bytesCount = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      metrics.recordStoreRead(tipo, System.nanoTime() - start);
+      while (bytesCount > 0) {
+        out.write(buffer, 0, bytesCount);
+        remaining -= bytesCount;
+        bytesCount = remaining > 0 ? in.read(buffer, 0, (int) Math.min(buffer.length, remaining)) : -1;
+      }
+    }
+  }
+
+  private static void writeAscii(OutputStream out, String value) throws IOException {
+    out.write(value.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static String getContentRange(ResourceRegion region, long contentLength) {
+    return "bytes " + region.getPosition() + "-" + (region.getPosition() + region.getCount() - 1) + "/"
+        + contentLength;
+  }
+
+  private HttpHeaders getArchivoHeaders(Documento documento) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + documento.getNombre() + "\"");
+    long lastModified = getLastModified(documento);
+    if (lastModified >= 0) {
+      headers.setLastModified(lastModified);
+    }
+    String eTag = getETag(documento);
+    if (eTag != null) {
+      headers.setETag(eTag);
+    }
+    headers.setCacheControl(getArchivoCacheControl());
+    return headers;
+  }
+
+  /**
+   * Prepara la respuesta de un fichero comprimido en el store: si el cliente
+   * acepta gzip se envían los bytes comprimidos (con una ETag propia de esa
+   * representación) y si no se descomprimen al enviarlos.
+   */
+  private Resource getGzipArchivo(Documento documento, Resource resource, HttpHeaders requestHeaders,
+      HttpHeaders headers) {
+    headers.add(HttpHeaders.ACCEPT_RANGES, "none");
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (acceptsGzip(requestHeaders)) {
+      Resource encoded = service.getDocumentoEncodedResource(documento);
+      headers.add(HttpHeaders.CONTENT_ENCODING, StoreUtils.GZIP_ENCODING);
+      if (headers.getETag() != null) {
+        headers.setETag("\"" + documento.getHash() + "-" + StoreUtils.GZIP_ENCODING + "\"");
+      }
+      try {
+        headers.setContentLength(encoded.contentLength());
+      } catch (IOException io) {
+        throw new RuntimeException(io);
+      }
+      return encoded;
+    }
+    // The decompressed length is unknown, the content is sent chunked
+    return resource;
+  }
+
+  /**
+   * Comprueba las cabeceras <code>If-None-Match</code> e
+   * <code>If-Modified-Since</code> de la petición.
+   */
+  private boolean isNotModified(HttpHeaders requestHeaders, String eTag, long lastModified) {
+    List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+    if (!ifNoneMatch.isEmpty()) {
+      // If-None-Match uses the weak comparison
+      return eTag != null && ifNoneMatch.stream()
+          .anyMatch(candidate -> "*".equals(candidate) || candidate.replaceFirst("^W/", "").equals(eTag));
+    }
+    try {
+      long ifModifiedSince = requestHeaders.getIfModifiedSince();
+      // HTTP dates have a resolution of seconds
+      return ifModifiedSince >= 0 && lastModified >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private boolean acceptsGzip(HttpHeaders requestHeaders) {
+    for (String value : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+      for (String coding : value.split(",")) {
+        String[] parts = coding.trim().split(";");
+        String name = parts[0].trim();
+        if (!StoreUtils.GZIP_ENCODING.equalsIgnoreCase(name) && !"*".equals(name)) {
+          continue;
+        }
+        boolean accepted = true;
+        for (int i = 1; i < parts.length; i++) {
+          String param = parts[i].trim();
+          if (param.startsWith("q=")) {
+            try {
+              accepted = Double.parseDouble(param.substring(2)) > 0;
+            } catch (NumberFormatException e) {
+              accepted = false;
+            }
+          }
+        }
+        return accepted;
+      }
+    }
+    return false;
+  }
+
+  private String getArchivoCacheControl() {
+    CacheControl cacheControl = CacheControl.maxAge(downloadProperties.getCacheMaxAge().getSeconds(),
+        TimeUnit.SECONDS);
+    cacheControl = downloadProperties.isCachePublic() ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+    return cacheControl.getHeaderValue() + ", immutable";
+  }
+
+  private boolean isIfRangeSatisfied(HttpHeaders requestHeaders, String eTag, long lastModified) {
+    String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // Only strong entity tags can be used with If-Range
+      return ifRange.equals(eTag);
+    }
+    try {
+      // HTTP dates have a resolution of seconds
+      return lastModified >= 0 && requestHeaders.getFirstDate(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
 }
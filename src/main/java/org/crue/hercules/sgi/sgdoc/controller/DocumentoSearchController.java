@@ -0,0 +1,62 @@
+package org.crue.hercules.sgi.sgdoc.controller;
+
+import org.crue.hercules.sgi.framework.web.bind.annotation.RequestPageable;
+import org.crue.hercules.sgi.sgdoc.dto.DocumentoSearchResult;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.service.SearchService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DocumentoSearchController
+ */
+@RestController
+@RequestMapping("/documentos/search")
+@ConditionalOnProperty(name = "sgi.search.enabled", havingValue = "true")
+@Slf4j
+public class DocumentoSearchController {
+
+  /** Search service */
+  private final SearchService service;
+
+  /**
+   * Instancia un nuevo DocumentoSearchController.
+   * 
+   * @param searchService {@link SearchService}.
+   */
+  public DocumentoSearchController(SearchService searchService) {
+    this.service = searchService;
+  }
+
+  /**
+   * Devuelve los {@link Documento} cuyo nombre o contenido coincide con el texto
+   * buscado, ordenados por relevancia y con los fragmentos del contenido que
+   * coinciden resaltados.
+   * 
+   * @param text   texto a buscar (sintaxis de consulta de Lucene).
+   * @param paging {@link Pageable}.
+   * @return la página de resultados.
+   */
+  @GetMapping
+  public ResponseEntity<Page<DocumentoSearchResult>> search(@RequestParam(name = "text") String text,
+      @RequestPageable(sort = "s") Pageable paging) {
+    log.debug("search(String text, Pageable paging) - start");
+    Page<DocumentoSearchResult> page = service.search(text, paging);
+
+    if (page.isEmpty()) {
+      log.debug("search(String text, Pageable paging) - end");
+      return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+    log.debug("search(String text, Pageable paging) - end");
+    return new ResponseEntity<>(page, HttpStatus.OK);
+  }
+}
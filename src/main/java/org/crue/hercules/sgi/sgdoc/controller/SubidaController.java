@@ -0,0 +1,123 @@
+package org.crue.hercules.sgi.sgdoc.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.crue.hercules.sgi.sgdoc.dto.SubidaEstado;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.Subida;
+import org.crue.hercules.sgi.sgdoc.service.SubidaService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SubidaController
+ * 
+ * Subidas por fragmentos: se crea la {@link Subida} indicando el nombre, tipo y
+ * tamaño del fichero, se envían los fragmentos (en cualquier orden y en
+ * paralelo) y por último se completa para crear el {@link Documento}. Si se
+ * interrumpe, el estado de la {@link Subida} indica los fragmentos que faltan.
+ */
+@RestController
+@RequestMapping("/documentos/subidas")
+@Slf4j
+public class SubidaController {
+
+  /** Subida service */
+  private final SubidaService service;
+
+  /**
+   * Instancia un nuevo SubidaController.
+   * 
+   * @param subidaService {@link SubidaService}.
+   */
+  public SubidaController(SubidaService subidaService) {
+    this.service = subidaService;
+  }
+
+  /**
+   * Crea una nueva {@link Subida}.
+   * 
+   * @param subida la {@link Subida} con el nombre, tipo y tamaño del fichero.
+   * @return la {@link Subida} creada con el tamaño y número de fragmentos.
+   */
+  @PostMapping
+  public ResponseEntity<Subida> create(@RequestBody Subida subida) {
+    log.debug("create(Subida subida) - start");
+    subida.setAutorRef("anonymous");
+    Subida subidaCreada = service.create(subida);
+    log.debug("create(Subida subida) - end");
+    return new ResponseEntity<>(subidaCreada, HttpStatus.CREATED);
+  }
+
+  /**
+   * Devuelve el estado de la {@link Subida} con el id indicado.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   * @return el {@link SubidaEstado} con los fragmentos recibidos.
+   */
+  @GetMapping("/{id}")
+  public SubidaEstado findById(@PathVariable String id) {
+    log.debug("findById(String id) - start");
+    SubidaEstado returnValue = service.findEstadoById(id);
+    log.debug("findById(String id) - end");
+    return returnValue;
+  }
+
+  /**
+   * Guarda un fragmento de la {@link Subida} con el contenido del cuerpo de la
+   * petición.
+   * 
+   * @param id      Identificador de la {@link Subida}.
+   * @param index   índice del fragmento (empezando en 0).
+   * @param request la petición.
+   * @throws IOException si no se puede leer el cuerpo de la petición.
+   */
+  @PutMapping("/{id}/fragmentos/{index}")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void uploadFragmento(@PathVariable String id, @PathVariable int index, HttpServletRequest request)
+      throws IOException {
+    log.debug("uploadFragmento(String id, int index, HttpServletRequest request) - start");
+    service.uploadFragmento(id, index, request.getInputStream());
+    log.debug("uploadFragmento(String id, int index, HttpServletRequest request) - end");
+  }
+
+  /**
+   * Completa la {@link Subida} y crea el {@link Documento}.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   * @return {@link Documento} creado.
+   */
+  @PostMapping("/{id}/completar")
+  public ResponseEntity<Documento> complete(@PathVariable String id) {
+    log.debug("complete(String id) - start");
+    Documento documentoCreado = service.complete(id);
+    log.debug("complete(String id) - end");
+    return new ResponseEntity<>(documentoCreado, HttpStatus.CREATED);
+  }
+
+  /**
+   * Cancela la {@link Subida} con el id indicado.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   */
+  @DeleteMapping("/{id}")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void deleteById(@PathVariable String id) {
+    log.debug("deleteById(String id) - start");
+    service.delete(id);
+    log.debug("deleteById(String id) - end");
+  }
+}
@@ -0,0 +1,32 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de la creación de uno de los ficheros de una subida múltiple.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentoBatchResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Nombre del fichero */
+  private String nombre;
+
+  /** Código de estado HTTP del resultado */
+  private int status;
+
+  /** {@link Documento} creado */
+  private Documento documento;
+
+  /** Descripción del error */
+  private String error;
+}
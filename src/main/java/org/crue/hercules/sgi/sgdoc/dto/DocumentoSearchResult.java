@@ -0,0 +1,29 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de una búsqueda por texto.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentoSearchResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** {@link Documento} encontrado */
+  private Documento documento;
+
+  /** Relevancia del {@link Documento} para la búsqueda */
+  private float score;
+
+  /** Fragmentos del contenido con los términos buscados resaltados */
+  private String fragmento;
+}
@@ -0,0 +1,35 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado de la reconstrucción del índice de búsqueda.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexacionEstado implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Indica si la reconstrucción está en curso */
+  private boolean enCurso;
+
+  private LocalDateTime fechaInicio;
+
+  private LocalDateTime fechaFin;
+
+  /** Documentos indexados */
+  private long indexados;
+
+  /** Documentos que no se han podido indexar */
+  private long errores;
+
+  /** Documentos en el índice */
+  private long documentosIndice;
+}
@@ -0,0 +1,48 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado de la comprobación de la integridad de los ficheros del store.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IntegridadEstado implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Indica si la comprobación está en curso */
+  private boolean enCurso;
+
+  private LocalDateTime fechaInicio;
+
+  private LocalDateTime fechaFin;
+
+  /** Ficheros comprobados */
+  private long revisados;
+
+  /** Bytes leídos */
+  private long bytes;
+
+  /** Ficheros cuyo contenido no coincide con el hash del documento */
+  private long discrepancias;
+
+  /** Documentos sin fichero en el store */
+  private long ausentes;
+
+  /** Ficheros que no se han podido leer */
+  private long errores;
+
+  /** Documentos sin hash (no se comprueban) */
+  private long omitidos;
+
+  /** documentoRef de los últimos ficheros con discrepancias o ausentes */
+  private List<String> documentoRefs;
+}
@@ -0,0 +1,29 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Página de un listado paginado por cursor (keyset).
+ *
+ * @param <T> tipo de los elementos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeysetPage<T> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Elementos de la página */
+  private List<T> content;
+
+  /**
+   * Cursor para obtener la página siguiente (<code>null</code> si es la última)
+   */
+  private String next;
+}
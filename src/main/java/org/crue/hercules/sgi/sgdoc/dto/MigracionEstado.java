@@ -0,0 +1,41 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado de la migración de los ficheros del store a la
+ * {@link StoreProperties.Layout} configurada.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MigracionEstado implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Organización destino */
+  private StoreProperties.Layout layout;
+
+  /** Indica si la migración está en curso */
+  private boolean enCurso;
+
+  private LocalDateTime fechaInicio;
+
+  private LocalDateTime fechaFin;
+
+  /** Ficheros movidos */
+  private long movidos;
+
+  /** Ficheros que no se han movido (ya migrados o sin documento) */
+  private long omitidos;
+
+  /** Ficheros que no se han podido mover */
+  private long errores;
+}
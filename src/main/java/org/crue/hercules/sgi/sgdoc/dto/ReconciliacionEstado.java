@@ -0,0 +1,61 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado de la conciliación de los ficheros del store con los documentos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliacionEstado implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Indica si la conciliación está en curso */
+  private boolean enCurso;
+
+  private LocalDateTime fechaInicio;
+
+  private LocalDateTime fechaFin;
+
+  /** Primer día conciliado (<code>null</code> si se concilia todo el store) */
+  private LocalDate desde;
+
+  /** Último día conciliado (<code>null</code> si se concilia todo el store) */
+  private LocalDate hasta;
+
+  /** Partición (día o directorio) en curso */
+  private String particion;
+
+  /** Particiones conciliadas */
+  private long particiones;
+
+  /** Ficheros revisados */
+  private long ficheros;
+
+  /** Documentos revisados */
+  private long documentos;
+
+  /** Ficheros sin documento */
+  private long huerfanos;
+
+  /** Ficheros sin documento eliminados */
+  private long eliminados;
+
+  /** Documentos sin fichero */
+  private long sinFichero;
+
+  /** Errores de lectura o borrado */
+  private long errores;
+
+  /** Últimas incidencias (ficheros huérfanos y documentos sin fichero) */
+  private List<String> incidencias;
+}
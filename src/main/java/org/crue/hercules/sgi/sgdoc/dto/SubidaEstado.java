@@ -0,0 +1,27 @@
+package org.crue.hercules.sgi.sgdoc.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.crue.hercules.sgi.sgdoc.model.Subida;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado de una {@link Subida}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubidaEstado implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** La {@link Subida} */
+  private Subida subida;
+
+  /** Índices de los fragmentos ya recibidos */
+  private List<Integer> fragmentosRecibidos;
+}
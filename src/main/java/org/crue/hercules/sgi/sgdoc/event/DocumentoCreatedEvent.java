@@ -0,0 +1,17 @@
+package org.crue.hercules.sgi.sgdoc.event;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Evento publicado al crear un {@link Documento}.
+ */
+@Getter
+@AllArgsConstructor
+public class DocumentoCreatedEvent {
+
+  /** {@link Documento} creado */
+  private final Documento documento;
+}
@@ -0,0 +1,17 @@
+package org.crue.hercules.sgi.sgdoc.event;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Evento publicado al eliminar un {@link Documento}.
+ */
+@Getter
+@AllArgsConstructor
+public class DocumentoDeletedEvent {
+
+  /** {@link Documento} eliminado */
+  private final Documento documento;
+}
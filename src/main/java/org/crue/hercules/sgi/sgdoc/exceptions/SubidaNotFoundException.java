@@ -0,0 +1,24 @@
+package org.crue.hercules.sgi.sgdoc.exceptions;
+
+import org.crue.hercules.sgi.framework.problem.message.ProblemMessage;
+import org.crue.hercules.sgi.framework.spring.context.support.ApplicationContextSupport;
+import org.crue.hercules.sgi.sgdoc.model.Subida;
+
+/**
+ * SubidaNotFoundException
+ */
+public class SubidaNotFoundException extends SgdocNotFoundException {
+
+  /**
+   *
+   */
+  private static final long serialVersionUID = 1L;
+
+  public SubidaNotFoundException(String subidaId) {
+    super(ProblemMessage.builder().key(SgdocNotFoundException.class)
+        .parameter("entity", ApplicationContextSupport.getMessage(
+            Subida.class))
+        .parameter("id", subidaId).build());
+  }
+
+}
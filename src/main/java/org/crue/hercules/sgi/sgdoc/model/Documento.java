@@ -8,6 +8,8 @@ import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
@@ -46,4 +48,21 @@ public class Documento implements Serializable {
 
   @Column(name = "hash")
   private String hash;
+
+  /** Raíz del árbol de hashes (Merkle) por bloques del fichero */
+  @Column(name = "hash_merkle")
+  private String hashMerkle;
+
+  /** Codificación del fichero en el store (gzip si está comprimido) */
+  @JsonIgnore
+  @Column(name = "codificacion")
+  private String codificacion;
+
+  /**
+   * Indica si el fichero está en el store deduplicado (<code>null</code> si es
+   * anterior a guardar el modo y no se pudo deducir)
+   */
+  @JsonIgnore
+  @Column(name = "deduplicado")
+  private Boolean deduplicado;
 }
\ No newline at end of file
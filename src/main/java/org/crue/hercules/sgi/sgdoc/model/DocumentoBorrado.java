@@ -0,0 +1,81 @@
+package org.crue.hercules.sgi.sgdoc.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Fichero de un {@link Documento} eliminado pendiente de borrar del store. Los
+ * ficheros se borran en segundo plano, por lo que la cola se guarda en la base
+ * de datos para que sobreviva a un reinicio.
+ */
+@Entity
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "documento_borrado")
+public class DocumentoBorrado implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @Column(name = "documento_ref")
+  private String documentoRef;
+
+  /** Fecha de creación del {@link Documento} (ruta del fichero) */
+  @Column(name = "fecha_creacion")
+  private LocalDateTime fechaCreacion;
+
+  /** Hash del contenido (contenidos deduplicados) */
+  @Column(name = "hash")
+  private String hash;
+
+  /** Indica si el fichero está en el store deduplicado */
+  @Column(name = "deduplicado")
+  private Boolean deduplicado;
+
+  @Column(name = "fecha_borrado", nullable = false)
+  private LocalDateTime fechaBorrado;
+
+  /** Intentos fallidos de borrar el fichero */
+  @Column(name = "intentos", nullable = false)
+  private Integer intentos;
+
+  /**
+   * Crea la entrada de la cola de borrado del fichero del {@link Documento}.
+   * 
+   * @param documento el {@link Documento} eliminado.
+   * @return la entrada de la cola.
+   */
+  public static DocumentoBorrado of(Documento documento) {
+    return new DocumentoBorrado(documento.getDocumentoRef(), documento.getFechaCreacion(), documento.getHash(),
+        documento.getDeduplicado(), LocalDateTime.now(), 0);
+  }
+
+  /**
+   * Devuelve un {@link Documento} con los datos necesarios para localizar su
+   * fichero.
+   * 
+   * @return el {@link Documento}.
+   */
+  public Documento toDocumento() {
+    Documento documento = new Documento();
+    documento.setDocumentoRef(documentoRef);
+    documento.setFechaCreacion(fechaCreacion);
+    documento.setHash(hash);
+    documento.setDeduplicado(deduplicado);
+    return documento;
+  }
+}
@@ -0,0 +1,49 @@
+package org.crue.hercules.sgi.sgdoc.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Contenido almacenado una única vez en el store deduplicado junto con el
+ * número de {@link Documento} que lo referencian.
+ */
+@Entity
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "documento_contenido")
+public class DocumentoContenido implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @Column(name = "hash")
+  private String hash;
+
+  @Column(name = "referencias", nullable = false)
+  private Integer referencias;
+
+  @Column(name = "fecha_creacion")
+  private LocalDateTime fechaCreacion;
+
+  /** Codificación del fichero (gzip si está comprimido) */
+  @Column(name = "codificacion")
+  private String codificacion;
+
+  /** Raíz del árbol de hashes (Merkle) del fichero, si se ha calculado */
+  @Column(name = "hash_merkle")
+  private String hashMerkle;
+}
@@ -0,0 +1,62 @@
+package org.crue.hercules.sgi.sgdoc.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Sesión de subida por fragmentos de un fichero. Los fragmentos se pueden
+ * enviar de forma independiente y en paralelo hasta que se completa la subida y
+ * se crea el {@link Documento}.
+ */
+@Entity
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "subida")
+public class Subida implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @Column(name = "id")
+  private String id;
+
+  @Column(name = "nombre")
+  private String nombre;
+
+  @Column(name = "tipo")
+  private String tipo;
+
+  @Column(name = "autor_ref")
+  private String autorRef;
+
+  /** Tamaño total del fichero */
+  @Column(name = "tamano")
+  private Long tamano;
+
+  /** Tamaño de cada fragmento (salvo el último) */
+  @Column(name = "tamano_fragmento")
+  private Long tamanoFragmento;
+
+  @Column(name = "num_fragmentos")
+  private Integer numFragmentos;
+
+  @Column(name = "fecha_creacion")
+  private LocalDateTime fechaCreacion;
+
+  @Column(name = "fecha_caducidad")
+  private LocalDateTime fechaCaducidad;
+}
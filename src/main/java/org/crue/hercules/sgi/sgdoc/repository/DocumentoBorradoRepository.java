@@ -0,0 +1,49 @@
+package org.crue.hercules.sgi.sgdoc.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.crue.hercules.sgi.sgdoc.model.DocumentoBorrado;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface DocumentoBorradoRepository extends JpaRepository<DocumentoBorrado, String> {
+
+  /**
+   * Devuelve los siguientes ficheros a borrar: primero los que han fallado menos
+   * veces y, entre ellos, los más antiguos.
+   * 
+   * @param pageable número de ficheros a devolver.
+   * @return los {@link DocumentoBorrado}.
+   */
+  List<DocumentoBorrado> findAllByOrderByIntentosAscFechaBorradoAsc(Pageable pageable);
+
+  /**
+   * Devuelve el {@link DocumentoBorrado} indicado bloqueándolo hasta el final de
+   * la transacción.
+   * 
+   * @param documentoRef documentoRef del {@link DocumentoBorrado}.
+   * @return el {@link DocumentoBorrado} si existe.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT b FROM DocumentoBorrado b WHERE b.documentoRef = :documentoRef")
+  Optional<DocumentoBorrado> findByDocumentoRefForUpdate(@Param("documentoRef") String documentoRef);
+
+  /**
+   * Incrementa los intentos fallidos de borrar el fichero.
+   * 
+   * @param documentoRef documentoRef del {@link DocumentoBorrado}.
+   * @return número de {@link DocumentoBorrado} actualizados.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE DocumentoBorrado b SET b.intentos = b.intentos + 1 WHERE b.documentoRef = :documentoRef")
+  int incrementIntentos(@Param("documentoRef") String documentoRef);
+}
@@ -0,0 +1,25 @@
+package org.crue.hercules.sgi.sgdoc.repository;
+
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.crue.hercules.sgi.sgdoc.model.DocumentoContenido;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface DocumentoContenidoRepository extends JpaRepository<DocumentoContenido, String> {
+
+  /**
+   * Devuelve el {@link DocumentoContenido} con el hash indicado bloqueándolo
+   * hasta el final de la transacción.
+   * 
+   * @param hash hash del contenido.
+   * @return el {@link DocumentoContenido} si existe.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT c FROM DocumentoContenido c WHERE c.hash = :hash")
+  Optional<DocumentoContenido> findByHashForUpdate(@Param("hash") String hash);
+}
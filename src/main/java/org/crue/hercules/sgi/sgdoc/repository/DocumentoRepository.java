@@ -1,8 +1,50 @@
 package org.crue.hercules.sgi.sgdoc.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.repository.custom.DocumentoRepositoryCustom;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface DocumentoRepository
+    extends JpaRepository<Documento, String>, JpaSpecificationExecutor<Documento>, DocumentoRepositoryCustom {
+
+  /**
+   * Devuelve los {@link Documento} con el hash indicado.
+   * 
+   * @param hash hash (SHA-256 hexadecimal) del fichero.
+   * @return los {@link Documento}.
+   */
+  List<Documento> findByHash(String hash);
+
+  /**
+   * Devuelve cuáles de los documentoRef indicados existen.
+   * 
+   * @param documentoRefs documentoRefs a buscar (como máximo
+   *                      DocumentoSpecifications.MAX_IN_LIST_SIZE).
+   * @return los documentoRef que existen.
+   */
+  @Query("SELECT d.documentoRef FROM Documento d WHERE d.documentoRef IN :documentoRefs")
+  List<String> findDocumentoRefs(@Param("documentoRefs") Collection<String> documentoRefs);
+
+  /**
+   * Devuelve la fecha de creación del {@link Documento} más antiguo.
+   * 
+   * @return la fecha (<code>null</code> si no hay documentos).
+   */
+  @Query("SELECT MIN(d.fechaCreacion) FROM Documento d")
+  LocalDateTime findMinFechaCreacion();
 
-public interface DocumentoRepository extends JpaRepository<Documento, String>, JpaSpecificationExecutor<Documento> {
+  /**
+   * Devuelve la fecha de creación del {@link Documento} más reciente.
+   * 
+   * @return la fecha (<code>null</code> si no hay documentos).
+   */
+  @Query("SELECT MAX(d.fechaCreacion) FROM Documento d")
+  LocalDateTime findMaxFechaCreacion();
 }
@@ -0,0 +1,35 @@
+package org.crue.hercules.sgi.sgdoc.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.crue.hercules.sgi.sgdoc.model.Subida;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SubidaRepository extends JpaRepository<Subida, String> {
+
+  /**
+   * Devuelve las {@link Subida} que caducan antes de la fecha indicada.
+   * 
+   * @param fecha fecha.
+   * @return las {@link Subida} caducadas.
+   */
+  List<Subida> findByFechaCaducidadBefore(LocalDateTime fecha);
+
+  /**
+   * Devuelve la {@link Subida} con el id indicado bloqueándola hasta el final de
+   * la transacción.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   * @return la {@link Subida} si existe.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT s FROM Subida s WHERE s.id = :id")
+  Optional<Subida> findByIdForUpdate(@Param("id") String id);
+}
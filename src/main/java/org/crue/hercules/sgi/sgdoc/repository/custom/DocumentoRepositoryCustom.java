@@ -0,0 +1,82 @@
+package org.crue.hercules.sgi.sgdoc.repository.custom;
+
+import java.util.List;
+import java.util.Map;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.utils.KeysetCursor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Custom repository para {@link Documento}.
+ */
+public interface DocumentoRepositoryCustom {
+
+  /**
+   * Inserta los nuevos {@link Documento} en lote (ver
+   * <code>hibernate.jdbc.batch_size</code>), sin comprobar previamente si
+   * existen.
+   * 
+   * @param documentos los {@link Documento} a insertar.
+   * @return los {@link Documento} insertados.
+   */
+  List<Documento> persistAll(List<Documento> documentos);
+
+  /**
+   * Elimina los {@link Documento} con una sentencia <code>DELETE</code> por cada
+   * bloque de
+   * {@link org.crue.hercules.sgi.sgdoc.repository.specification.DocumentoSpecifications#MAX_IN_LIST_SIZE}
+   * ids y encola en lote el borrado de sus ficheros
+   * ({@link org.crue.hercules.sgi.sgdoc.model.DocumentoBorrado}), en la misma
+   * transacción.
+   * 
+   * @param documentos los {@link Documento} a eliminar.
+   * @return número de {@link Documento} eliminados.
+   */
+  int deleteAllDeferred(List<Documento> documentos);
+
+  /**
+   * Devuelve los {@link Documento} que cumplen la especificación ordenados por
+   * <code>(fechaCreacion, documentoRef)</code> a continuación del cursor. La
+   * consulta se resuelve con el índice sobre esas columnas, por lo que su coste
+   * no depende de la posición en el listado. Los {@link Documento} sin
+   * fechaCreacion no se incluyen.
+   * 
+   * @param spec   especificación (puede ser <code>null</code>).
+   * @param cursor posición a partir de la que se devuelven los {@link Documento}
+   *               (<code>null</code> para empezar por el principio).
+   * @param limit  número máximo de {@link Documento} a devolver.
+   * @return los {@link Documento}.
+   */
+  List<Documento> findAllAfter(Specification<Documento> spec, KeysetCursor cursor, int limit);
+
+  /**
+   * Devuelve una página de los {@link Documento} que cumplen la especificación
+   * sin calcular el número total de elementos: se obtiene un elemento más de los
+   * pedidos para saber si hay página siguiente, evitando la consulta
+   * <code>COUNT</code>.
+   * 
+   * @param spec     especificación (puede ser <code>null</code>).
+   * @param pageable la página.
+   * @return el {@link Slice} de {@link Documento}.
+   */
+  Slice<Documento> findSlice(Specification<Documento> spec, Pageable pageable);
+
+  /**
+   * Devuelve una página con los campos indicados de los {@link Documento} que
+   * cumplen la especificación. Sólo se consultan las columnas de esos campos y
+   * no se crean las entidades.
+   * 
+   * @param spec     especificación (puede ser <code>null</code>).
+   * @param pageable la página.
+   * @param fields   nombres de los campos de {@link Documento} a devolver.
+   * @param count    indica si se calcula el número total de elementos (si no,
+   *                 se devuelve un {@link Slice}).
+   * @return la página con un mapa de campo a valor por cada {@link Documento}.
+   * @throws IllegalArgumentException si alguno de los campos no existe.
+   */
+  Slice<Map<String, Object>> findAllProjected(Specification<Documento> spec, Pageable pageable,
+      List<String> fields, boolean count);
+}
@@ -0,0 +1,211 @@
+package org.crue.hercules.sgi.sgdoc.repository.custom;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.Attribute;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.DocumentoBorrado;
+import org.crue.hercules.sgi.sgdoc.model.Documento_;
+import org.crue.hercules.sgi.sgdoc.repository.specification.DocumentoSpecifications;
+import org.crue.hercules.sgi.sgdoc.utils.KeysetCursor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Custom repository para {@link Documento}.
+ */
+@Slf4j
+public class DocumentoRepositoryCustomImpl implements DocumentoRepositoryCustom {
+
+  /** The entity manager. */
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public List<Documento> persistAll(List<Documento> documentos) {
+    log.debug("persistAll(List<Documento> documentos) - start");
+    // Unlike save(), persist() does not issue a SELECT for entities with an
+    // assigned identifier, so the inserts can be grouped into JDBC batches
+    for (Documento documento : documentos) {
+      entityManager.persist(documento);
+    }
+    entityManager.flush();
+    log.debug("persistAll(List<Documento> documentos) - end");
+    return documentos;
+  }
+
+  @Override
+  public int deleteAllDeferred(List<Documento> documentos) {
+    log.debug("deleteAllDeferred(List<Documento> documentos) - start");
+    for (Documento documento : documentos) {
+      entityManager.persist(DocumentoBorrado.of(documento));
+    }
+    entityManager.flush();
+
+    int returnValue = 0;
+    List<String> documentoRefs = documentos.stream().map(Documento::getDocumentoRef).collect(Collectors.toList());
+    for (int i = 0; i < documentoRefs.size(); i += DocumentoSpecifications.MAX_IN_LIST_SIZE) {
+      List<String> chunk = documentoRefs.subList(i,
+          Math.min(i + DocumentoSpecifications.MAX_IN_LIST_SIZE, documentoRefs.size()));
+      returnValue += entityManager.createQuery("DELETE FROM Documento d WHERE d.documentoRef IN :documentoRefs")
+          .setParameter("documentoRefs", chunk).executeUpdate();
+    }
+    log.debug("deleteAllDeferred(List<Documento> documentos) - end");
+    return returnValue;
+  }
+
+  @Override
+  public List<Documento> findAllAfter(Specification<Documento> spec, KeysetCursor cursor, int limit) {
+    log.debug("findAllAfter(Specification<Documento> spec, KeysetCursor cursor, int limit) - start");
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Documento> query = cb.createQuery(Documento.class);
+    Root<Documento> root = query.from(Documento.class);
+
+    List<Predicate> predicates = new ArrayList<>();
+    if (spec != null) {
+      Predicate predicate = spec.toPredicate(root, query, cb);
+      if (predicate != null) {
+        predicates.add(predicate);
+      }
+    }
+    predicates.add(cb.isNotNull(root.get(Documento_.fechaCreacion)));
+    if (cursor != null) {
+      // (fechaCreacion, documentoRef) > (cursor.fechaCreacion, cursor.documentoRef)
+      predicates.add(cb.or(cb.greaterThan(root.get(Documento_.fechaCreacion), cursor.getFechaCreacion()),
+          cb.and(cb.equal(root.get(Documento_.fechaCreacion), cursor.getFechaCreacion()),
+              cb.greaterThan(root.get(Documento_.documentoRef), cursor.getDocumentoRef()))));
+    }
+    query.where(predicates.toArray(new Predicate[0]));
+    query.orderBy(cb.asc(root.get(Documento_.fechaCreacion)), cb.asc(root.get(Documento_.documentoRef)));
+
+    List<Documento> returnValue = entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    log.debug("findAllAfter(Specification<Documento> spec, KeysetCursor cursor, int limit) - end");
+    return returnValue;
+  }
+
+  @Override
+  public Slice<Documento> findSlice(Specification<Documento> spec, Pageable pageable) {
+    log.debug("findSlice(Specification<Documento> spec, Pageable pageable) - start");
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Documento> query = cb.createQuery(Documento.class);
+    Root<Documento> root = query.from(Documento.class);
+
+    if (spec != null) {
+      Predicate predicate = spec.toPredicate(root, query, cb);
+      if (predicate != null) {
+        query.where(predicate);
+      }
+    }
+    if (pageable.getSort().isSorted()) {
+      query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+    }
+
+    TypedQuery<Documento> typedQuery = entityManager.createQuery(query);
+    if (pageable.isPaged()) {
+      typedQuery.setFirstResult((int) pageable.getOffset());
+      typedQuery.setMaxResults(pageable.getPageSize() + 1);
+    }
+    List<Documento> content = typedQuery.getResultList();
+
+    boolean hasNext = pageable.isPaged() && content.size() > pageable.getPageSize();
+    if (hasNext) {
+      content = new ArrayList<>(content.subList(0, pageable.getPageSize()));
+    }
+    log.debug("findSlice(Specification<Documento> spec, Pageable pageable) - end");
+    return new SliceImpl<>(content, pageable, hasNext);
+  }
+
+  @Override
+  public Slice<Map<String, Object>> findAllProjected(Specification<Documento> spec, Pageable pageable,
+      List<String> fields, boolean count) {
+    log.debug("findAllProjected(Specification<Documento> spec, Pageable pageable, List<String> fields, boolean count) - start");
+    Set<String> attributes = entityManager.getMetamodel().entity(Documento.class).getSingularAttributes().stream()
+        .map(Attribute::getName).collect(Collectors.toSet());
+    for (String field : fields) {
+      if (!attributes.contains(field)) {
+        throw new IllegalArgumentException("Unknown field: " + field);
+      }
+    }
+
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> query = cb.createTupleQuery();
+    Root<Documento> root = query.from(Documento.class);
+
+    List<Selection<?>> selections = new ArrayList<>(fields.size());
+    for (String field : fields) {
+      selections.add(root.get(field).alias(field));
+    }
+    query.multiselect(selections);
+    if (spec != null) {
+      Predicate predicate = spec.toPredicate(root, query, cb);
+      if (predicate != null) {
+        query.where(predicate);
+      }
+    }
+    if (pageable.getSort().isSorted()) {
+      query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+    }
+
+    TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+    if (pageable.isPaged()) {
+      typedQuery.setFirstResult((int) pageable.getOffset());
+      typedQuery.setMaxResults(count ? pageable.getPageSize() : pageable.getPageSize() + 1);
+    }
+    List<Map<String, Object>> content = new ArrayList<>();
+    for (Tuple tuple : typedQuery.getResultList()) {
+      Map<String, Object> values = new LinkedHashMap<>();
+      for (String field : fields) {
+        values.put(field, tuple.get(field));
+      }
+      content.add(values);
+    }
+
+    Slice<Map<String, Object>> returnValue;
+    if (count) {
+      returnValue = PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    } else {
+      boolean hasNext = pageable.isPaged() && content.size() > pageable.getPageSize();
+      if (hasNext) {
+        content = new ArrayList<>(content.subList(0, pageable.getPageSize()));
+      }
+      returnValue = new SliceImpl<>(content, pageable, hasNext);
+    }
+    log.debug("findAllProjected(Specification<Documento> spec, Pageable pageable, List<String> fields, boolean count) - end");
+    return returnValue;
+  }
+
+  private long count(Specification<Documento> spec) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Long> query = cb.createQuery(Long.class);
+    Root<Documento> root = query.from(Documento.class);
+    query.select(cb.count(root));
+    if (spec != null) {
+      Predicate predicate = spec.toPredicate(root, query, cb);
+      if (predicate != null) {
+        query.where(predicate);
+      }
+    }
+    return entityManager.createQuery(query).getSingleResult();
+  }
+}
@@ -1,17 +1,47 @@
 package org.crue.hercules.sgi.sgdoc.repository.specification;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.persistence.criteria.Predicate;
+
 import org.crue.hercules.sgi.sgdoc.model.Documento;
 import org.crue.hercules.sgi.sgdoc.model.Documento_;
 import org.springframework.data.jpa.domain.Specification;
 
 public class DocumentoSpecifications {
 
+  /**
+   * Número máximo de elementos de cada lista <code>IN</code> (Oracle admite
+   * 1000 y SQL Server 2100 parámetros por consulta)
+   */
+  public static final int MAX_IN_LIST_SIZE = 500;
+
   public static Specification<Documento> byDocumentoRefs(List<String> documentoRefs) {
     return (root, query, cb) -> {
-      return root.get(Documento_.documentoRef).in(documentoRefs);
+      if (documentoRefs.size() <= MAX_IN_LIST_SIZE) {
+        return root.get(Documento_.documentoRef).in(documentoRefs);
+      }
+      List<Predicate> predicates = new ArrayList<>();
+      for (int i = 0; i < documentoRefs.size(); i += MAX_IN_LIST_SIZE) {
+        predicates.add(root.get(Documento_.documentoRef)
+            .in(documentoRefs.subList(i, Math.min(i + MAX_IN_LIST_SIZE, documentoRefs.size()))));
+      }
+      return cb.or(predicates.toArray(new Predicate[0]));
     };
   }
 
-}
\ No newline at end of file
+  /**
+   * {@link Documento} creados en el intervalo <code>[desde, hasta)</code>.
+   * 
+   * @param desde inicio del intervalo (incluido).
+   * @param hasta fin del intervalo (excluido).
+   * @return la especificación.
+   */
+  public static Specification<Documento> byFechaCreacionBetween(LocalDateTime desde, LocalDateTime hasta) {
+    return (root, query, cb) -> cb.and(cb.greaterThanOrEqualTo(root.get(Documento_.fechaCreacion), desde),
+        cb.lessThan(root.get(Documento_.fechaCreacion), hasta));
+  }
+
+}
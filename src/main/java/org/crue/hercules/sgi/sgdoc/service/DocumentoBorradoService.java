@@ -0,0 +1,101 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.crue.hercules.sgi.sgdoc.config.DeleteProperties;
+import org.crue.hercules.sgi.sgdoc.model.DocumentoBorrado;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoBorradoRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Borrado en segundo plano de los ficheros de los {@link DocumentoBorrado}.
+ *
+ * Cada fichero se borra en su propia transacción, que bloquea la entrada de la
+ * cola y la elimina al terminar: si la aplicación se detiene, la entrada sigue
+ * en la cola y se procesa tras el reinicio, y varios nodos pueden procesar la
+ * cola a la vez sin borrar dos veces el mismo fichero (lo que liberaría dos
+ * veces un contenido deduplicado).
+ *
+ * La cola se procesa en el pool de tareas programadas
+ * (<code>spring.task.scheduling.pool.size</code>), que debe tener más de un
+ * hilo para que un procesamiento largo no retrase el resto de tareas.
+ */
+@Service
+@Slf4j
+public class DocumentoBorradoService {
+
+  /** Delete Properties */
+  private final DeleteProperties deleteProperties;
+  /** DocumentoBorrado repository */
+  private final DocumentoBorradoRepository repository;
+  /** Store service */
+  private final StoreService storeService;
+  /** Transacción de cada borrado */
+  private final TransactionTemplate transactionTemplate;
+
+  public DocumentoBorradoService(DeleteProperties deleteProperties, DocumentoBorradoRepository repository,
+      StoreService storeService, PlatformTransactionManager transactionManager) {
+    this.deleteProperties = deleteProperties;
+    this.repository = repository;
+    this.storeService = storeService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Borra los ficheros pendientes. Los que no se pueden borrar se reintentan en
+   * la siguiente ejecución, después del resto.
+   */
+  @Scheduled(initialDelayString = "${sgi.delete.interval:PT1M}", fixedDelayString = "${sgi.delete.interval:PT1M}")
+  public void deletePending() {
+    log.debug("deletePending() - start");
+    int batchSize = deleteProperties.getBatchSize();
+    long borrados = 0;
+    long fallidos = 0;
+    List<DocumentoBorrado> pendientes;
+    boolean progreso;
+    do {
+      pendientes = repository.findAllByOrderByIntentosAscFechaBorradoAsc(PageRequest.of(0, batchSize));
+      progreso = false;
+      for (DocumentoBorrado pendiente : pendientes) {
+        if (delete(pendiente.getDocumentoRef())) {
+          borrados++;
+          progreso = true;
+        } else {
+          fallidos++;
+        }
+      }
+      // Only failed entries left: retry them in the next run
+    } while (pendientes.size() == batchSize && progreso);
+
+    if (borrados > 0 || fallidos > 0) {
+      log.info("Deleted {} queued store files ({} failed)", borrados, fallidos);
+    }
+    log.debug("deletePending() - end");
+  }
+
+  private boolean delete(String documentoRef) {
+    try {
+      transactionTemplate.execute(status -> {
+        // Another node may have already deleted it
+        Optional<DocumentoBorrado> pendiente = repository.findByDocumentoRefForUpdate(documentoRef);
+        if (pendiente.isPresent()) {
+          storeService.delete(pendiente.get().toDocumento());
+          repository.delete(pendiente.get());
+        }
+        return null;
+      });
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("Unable to delete the file of documento {}", documentoRef, e);
+      repository.incrementIntentos(documentoRef);
+      return false;
+    }
+  }
+}
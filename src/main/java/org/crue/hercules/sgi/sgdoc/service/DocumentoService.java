@@ -1,31 +1,63 @@
 package org.crue.hercules.sgi.sgdoc.service;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 import org.crue.hercules.sgi.framework.problem.message.ProblemMessage;
 import org.crue.hercules.sgi.framework.rsql.SgiRSQLJPASupport;
 import org.crue.hercules.sgi.framework.spring.context.support.ApplicationContextSupport;
-import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+import org.crue.hercules.sgi.sgdoc.actuate.DocumentoMetrics;
+import org.crue.hercules.sgi.sgdoc.config.CacheConfig;
+import org.crue.hercules.sgi.sgdoc.config.DeleteProperties;
+import org.crue.hercules.sgi.sgdoc.config.ExecutorConfig;
+import org.crue.hercules.sgi.sgdoc.dto.DocumentoBatchResult;
+import org.crue.hercules.sgi.sgdoc.dto.KeysetPage;
+import org.crue.hercules.sgi.sgdoc.event.DocumentoCreatedEvent;
+import org.crue.hercules.sgi.sgdoc.event.DocumentoDeletedEvent;
 import org.crue.hercules.sgi.sgdoc.exceptions.ArchivoNotFoundException;
 import org.crue.hercules.sgi.sgdoc.exceptions.DocumentoNotFoundException;
 import org.crue.hercules.sgi.sgdoc.model.Documento;
 import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
 import org.crue.hercules.sgi.sgdoc.repository.specification.DocumentoSpecifications;
+import org.crue.hercules.sgi.sgdoc.utils.KeysetCursor;
+import org.crue.hercules.sgi.sgdoc.utils.StagedFile;
 import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -38,15 +70,39 @@ public class DocumentoService {
   private static final String PROBLEM_MESSAGE_NOTNULL = "notNull";
   private static final String PROBLEM_MESSAGE_ISNULL = "isNull";
   private static final String MESSAGE_KEY_DOCUMENTO_REF = "documentoRef";
+  /** Error devuelto por cada fichero de una subida múltiple que no se guarda */
+  private static final String STORE_ERROR_MESSAGE = "Unable to store the file";
+  /** Error de los ficheros que no se aceptan por estar lleno el executor */
+  private static final String BUSY_ERROR_MESSAGE = "Too many uploads in progress, retry later";
+  /** Tamaño máximo de las páginas por cursor */
+  public static final int MAX_KEYSET_PAGE_SIZE = 1000;
 
   /** Documento repository */
   private final DocumentoRepository repository;
-  /** Store Properties */
-  private final StoreProperties storeProperties;
-
-  public DocumentoService(DocumentoRepository repository, StoreProperties storeProperties) {
+  /** Store service */
+  private final StoreService storeService;
+  /** Executor de escritura de ficheros */
+  private final TaskExecutor uploadTaskExecutor;
+  /** Publicación de los eventos de creación y borrado */
+  private final ApplicationEventPublisher eventPublisher;
+  /** Métricas */
+  private final DocumentoMetrics metrics;
+  /** Delete Properties */
+  private final DeleteProperties deleteProperties;
+  /** Transacción de la creación, que se abre una vez preparado el fichero */
+  private final TransactionTemplate transactionTemplate;
+
+  public DocumentoService(DocumentoRepository repository, StoreService storeService,
+      @Qualifier(ExecutorConfig.UPLOAD_TASK_EXECUTOR) TaskExecutor uploadTaskExecutor,
+      ApplicationEventPublisher eventPublisher, DocumentoMetrics metrics, DeleteProperties deleteProperties,
+      PlatformTransactionManager transactionManager) {
     this.repository = repository;
-    this.storeProperties = storeProperties;
+    this.storeService = storeService;
+    this.uploadTaskExecutor = uploadTaskExecutor;
+    this.eventPublisher = eventPublisher;
+    this.metrics = metrics;
+    this.deleteProperties = deleteProperties;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
   }
 
   /**
@@ -56,46 +112,200 @@ public class DocumentoService {
    * @param file      el {@link Resource} del {@link Documento}.
    * @return la entidad {@link Documento} persistida.
    */
-  @Transactional
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public Documento create(Documento documento, Resource file) {
-    log.debug("create(Documento documento) - start");
+    try (InputStream content = file.getInputStream()) {
+      return create(documento, content);
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    }
+  }
 
-    Assert.isNull(documento.getDocumentoRef(),
-        // Defer message resolution untill is needed
-        () -> ProblemMessage.builder().key(Assert.class, PROBLEM_MESSAGE_ISNULL)
-            .parameter(PROBLEM_MESSAGE_PARAMETER_FIELD, ApplicationContextSupport.getMessage(MESSAGE_KEY_DOCUMENTO_REF))
-            .parameter(PROBLEM_MESSAGE_PARAMETER_ENTITY, ApplicationContextSupport.getMessage(Documento.class))
-            .build());
+  /**
+   * Guarda la entidad {@link Documento} escribiendo el contenido directamente en
+   * el store a medida que se lee.
+   * 
+   * El contenido se prepara sin transacción (la lectura puede ser tan lenta como
+   * el cliente) y la transacción solo se abre para mover el fichero al store y
+   * guardar el {@link Documento}.
+   *
+   * @param documento la entidad {@link Documento} a guardar.
+   * @param content   el contenido del {@link Documento}.
+   * @return la entidad {@link Documento} persistida.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Documento create(Documento documento, InputStream content) {
+    log.debug("create(Documento documento, InputStream content) - start");
 
-    documento.setDocumentoRef(UUID.randomUUID().toString());
+    assertNew(documento);
 
+    Timer.Sample sample = metrics.startUpload();
+    StagedFile staged = null;
+    boolean error = true;
     try {
-      File fileStore = StoreUtils.getResource(storeProperties.getPath(), documento).getFile();
-
-      fileStore.getParentFile().mkdirs();
-      if (!fileStore.exists()) {
-        Files.copy(file.getInputStream(), fileStore.toPath());
-        documento.setHash(getHashFile(fileStore));
-      } else {
-        throw new IllegalArgumentException("File exist!");
+      staged = storeService.stage(content, documento.getTipo());
+      StagedFile toCommit = staged;
+      Documento returnValue = transactionTemplate.execute(status -> create(documento, toCommit));
+      error = false;
+      log.debug("create(Documento documento, InputStream content) - end");
+      return returnValue;
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    } finally {
+      metrics.stopUpload(sample, documento.getTipo(), staged != null ? staged.getSize() : 0, error);
+      if (staged != null) {
+        StoreUtils.discard(staged);
       }
-    } catch (IOException | NoSuchAlgorithmException io) {
+    }
+  }
+
+  /**
+   * Guarda la entidad {@link Documento} moviendo al store el fichero ya
+   * preparado.
+   *
+   * @param documento la entidad {@link Documento} a guardar.
+   * @param staged    el fichero preparado con el contenido del
+   *                  {@link Documento}.
+   * @return la entidad {@link Documento} persistida.
+   */
+  @Transactional
+  public Documento create(Documento documento, StagedFile staged) {
+    log.debug("create(Documento documento, StagedFile staged) - start");
+
+    assertNew(documento);
+
+    documento.setDocumentoRef(UUID.randomUUID().toString());
+
+    try {
+      storeService.commit(documento, staged);
+    } catch (FileAlreadyExistsException e) {
+      throw new IllegalArgumentException("File exist!");
+    } catch (IOException io) {
       throw new RuntimeException(io);
     }
 
     Documento returnValue = repository.save(documento);
+    eventPublisher.publishEvent(new DocumentoCreatedEvent(returnValue));
+
+    log.debug("create(Documento documento, StagedFile staged) - end");
+
+    return returnValue;
+  }
+
+  /**
+   * Guarda las entidades {@link Documento} de una subida múltiple.
+   * 
+   * Los ficheros se escriben en el store en paralelo (con el número máximo de
+   * escrituras simultáneas del executor de subidas) sin transacción, y los
+   * {@link Documento} se insertan en lote en una única transacción que solo se
+   * abre una vez preparados todos los ficheros. El fallo al escribir un fichero
+   * no impide la creación del resto.
+   *
+   * @param documentos las entidades {@link Documento} a guardar.
+   * @param files      los {@link Resource} de cada {@link Documento}, en el mismo
+   *                   orden.
+   * @return el resultado de la creación de cada {@link Documento}, en el mismo
+   *         orden.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public List<DocumentoBatchResult> createAll(List<Documento> documentos, List<Resource> files) {
+    log.debug("createAll(List<Documento> documentos, List<Resource> files) - start");
+
+    Assert.isTrue(documentos.size() == files.size(), "documentos and files must have the same size");
+
+    documentos.forEach(this::assertNew);
+
+    List<CompletableFuture<StagedFile>> staging = new ArrayList<>(documentos.size());
+    List<Timer.Sample> samples = new ArrayList<>(documentos.size());
+    for (int i = 0; i < documentos.size(); i++) {
+      Documento documento = documentos.get(i);
+      Resource file = files.get(i);
+      samples.add(metrics.startUpload());
+      CompletableFuture<StagedFile> future;
+      try {
+        future = CompletableFuture.supplyAsync(() -> stage(file, documento.getTipo()), uploadTaskExecutor);
+      } catch (RejectedExecutionException e) {
+        // Keep the files already submitted so that they are discarded below
+        future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+      }
+      staging.add(future);
+    }
+
+    // Wait for every file so that none is left behind in the tmp directory
+    List<StagedFile> stagedFiles = new ArrayList<>(documentos.size());
+    List<HttpStatus> errors = new ArrayList<>(documentos.size());
+    for (int i = 0; i < staging.size(); i++) {
+      try {
+        stagedFiles.add(staging.get(i).join());
+        errors.add(null);
+      } catch (CompletionException e) {
+        stagedFiles.add(null);
+        if (e.getCause() instanceof RejectedExecutionException) {
+          log.warn("Unable to stage {}: upload executor saturated", documentos.get(i).getNombre());
+          errors.add(HttpStatus.SERVICE_UNAVAILABLE);
+        } else {
+          log.warn("Unable to stage " + documentos.get(i).getNombre(), e.getCause());
+          errors.add(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+      }
+    }
 
-    log.debug("create(Documento documento) - end");
+    List<DocumentoBatchResult> returnValue = new ArrayList<>(documentos.size());
+    boolean persisted = false;
+    try {
+      transactionTemplate.execute(status -> {
+        List<Documento> created = new ArrayList<>(documentos.size());
+        for (int i = 0; i < documentos.size(); i++) {
+          Documento documento = documentos.get(i);
+          if (errors.get(i) == null) {
+            documento.setDocumentoRef(UUID.randomUUID().toString());
+            try {
+              storeService.commit(documento, stagedFiles.get(i));
+            } catch (IOException io) {
+              log.warn("Unable to store " + documento.getNombre(), io);
+              errors.set(i, HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+          }
+
+          if (errors.get(i) == null) {
+            created.add(documento);
+            returnValue.add(
+                new DocumentoBatchResult(documento.getNombre(), HttpStatus.CREATED.value(), documento, null));
+          } else {
+            documento.setDocumentoRef(null);
+            HttpStatus error = errors.get(i);
+            returnValue.add(new DocumentoBatchResult(documento.getNombre(), error.value(), null,
+                error == HttpStatus.SERVICE_UNAVAILABLE ? BUSY_ERROR_MESSAGE : STORE_ERROR_MESSAGE));
+          }
+        }
+
+        repository.persistAll(created);
+        created.forEach(documento -> eventPublisher.publishEvent(new DocumentoCreatedEvent(documento)));
+        return null;
+      });
+      persisted = true;
+    } finally {
+      for (int i = 0; i < documentos.size(); i++) {
+        StagedFile staged = stagedFiles.get(i);
+        metrics.stopUpload(samples.get(i), documentos.get(i).getTipo(), staged != null ? staged.getSize() : 0,
+            !persisted || errors.get(i) != null);
+      }
+      stagedFiles.stream().filter(Objects::nonNull).forEach(StoreUtils::discard);
+    }
 
+    log.debug("createAll(List<Documento> documentos, List<Resource> files) - end");
     return returnValue;
   }
 
   /**
-   * Elimina el {@link Documento}.
+   * Elimina el {@link Documento}. Si el borrado diferido está activado el
+   * fichero se borra en segundo plano.
    *
    * @param id identificador del {@link Documento} a guardar.
    */
   @Transactional
+  @CacheEvict(cacheNames = CacheConfig.DOCUMENTO_CACHE, key = "#id")
   public void delete(String id) {
     log.debug("delete(String id) - start");
 
@@ -108,20 +318,50 @@ public class DocumentoService {
 
     Documento documento = repository.findById(id).orElseThrow(() -> new DocumentoNotFoundException(id));
 
-    repository.deleteById(id);
-
-    Resource file = StoreUtils.getResource(storeProperties.getPath(), documento);
-    if (file.exists() && !documento.getDocumentoRef().startsWith(StoreUtils.SAMPLE_DATA_PREFIX)) {
-      try {
-        file.getFile().delete();
-      } catch (IOException io) {
-        throw new RuntimeException(io);
-      }
+    if (deleteProperties.isDeferred()) {
+      repository.deleteAllDeferred(Collections.singletonList(documento));
+    } else {
+      repository.deleteById(id);
+      storeService.delete(documento);
     }
+    eventPublisher.publishEvent(new DocumentoDeletedEvent(documento));
 
     log.debug("delete(String id) - end");
   }
 
+  /**
+   * Elimina los {@link Documento} con los ids indicados. Las filas se eliminan
+   * en lote en esta transacción y los ficheros se borran en segundo plano (ver
+   * {@link DocumentoBorradoService}). Los ids que no existen se ignoran.
+   * 
+   * Se vacía la caché de {@link Documento} en lugar de invalidar cada id.
+   * 
+   * Se admiten como máximo <code>sgi.delete.max-ids</code> ids por llamada.
+   *
+   * @param ids identificadores de {@link Documento}.
+   * @return los ids de los {@link Documento} eliminados, en el orden de los ids
+   *         y sin repetidos.
+   */
+  @Transactional
+  @CacheEvict(cacheNames = CacheConfig.DOCUMENTO_CACHE, allEntries = true)
+  public List<String> deleteAll(List<String> ids) {
+    log.debug("deleteAll(List<String> ids) - start");
+    Assert.notNull(ids, "ids must not be null");
+    Assert.isTrue(ids.size() <= deleteProperties.getMaxIds(),
+        () -> "At most " + deleteProperties.getMaxIds() + " documentos can be deleted at once");
+    Set<String> uniqueIds = new LinkedHashSet<>(ids);
+    Map<String, Documento> documentos = findMapByDocumentoRefs(new ArrayList<>(uniqueIds), null);
+
+    List<Documento> deleted = uniqueIds.stream().map(documentos::get).filter(Objects::nonNull)
+        .collect(Collectors.toList());
+    repository.deleteAllDeferred(deleted);
+    deleted.forEach(documento -> eventPublisher.publishEvent(new DocumentoDeletedEvent(documento)));
+
+    List<String> returnValue = deleted.stream().map(Documento::getDocumentoRef).collect(Collectors.toList());
+    log.debug("deleteAll(List<String> ids) - end");
+    return returnValue;
+  }
+
   /**
    * Devuelve una lista paginada y filtrada de {@link Documento}.
    * 
@@ -136,12 +376,67 @@ public class DocumentoService {
     return returnValue;
   }
 
+  /**
+   * Devuelve una página filtrada de {@link Documento} sin calcular el número
+   * total de elementos (no se ejecuta la consulta <code>COUNT</code>).
+   * 
+   * @param query  filtro de búsqueda.
+   * @param paging {@link Pageable}.
+   * @return el {@link Slice} de entidades {@link Documento} filtradas.
+   */
+  public Slice<Documento> findSlice(String query, Pageable paging) {
+    Specification<Documento> spec = SgiRSQLJPASupport.toSpecification(query);
+
+    Slice<Documento> returnValue = repository.findSlice(spec, paging);
+    return returnValue;
+  }
+
+  /**
+   * Devuelve una lista paginada y filtrada con los campos indicados de los
+   * {@link Documento}. Sólo se consultan las columnas de esos campos.
+   * 
+   * @param query  filtro de búsqueda.
+   * @param paging {@link Pageable}.
+   * @param fields campos a devolver.
+   * @param count  indica si se calcula el número total de elementos (si no, se
+   *               devuelve un {@link Slice}).
+   * @return el listado con los campos de los {@link Documento}.
+   */
+  public Slice<Map<String, Object>> findAll(String query, Pageable paging, List<String> fields, boolean count) {
+    Specification<Documento> spec = SgiRSQLJPASupport.toSpecification(query);
+
+    Slice<Map<String, Object>> returnValue = repository.findAllProjected(spec, paging, fields, count);
+    return returnValue;
+  }
+
+  /**
+   * Devuelve una página filtrada de {@link Documento} ordenados por
+   * <code>(fechaCreacion, documentoRef)</code> a continuación del cursor
+   * indicado. A diferencia de la paginación por offset, el coste de cada página
+   * no depende de su posición.
+   * 
+   * @param query  filtro de búsqueda.
+   * @param cursor cursor devuelto en la página anterior (<code>null</code> para
+   *               la primera página).
+   * @param size   tamaño de la página.
+   * @return la página de {@link Documento}.
+   */
+  public KeysetPage<Documento> findAll(String query, String cursor, int size) {
+    log.debug("findAll(String query, String cursor, int size) - start");
+    Specification<Documento> spec = SgiRSQLJPASupport.toSpecification(query);
+
+    KeysetPage<Documento> returnValue = findAll(spec, cursor, size);
+    log.debug("findAll(String query, String cursor, int size) - end");
+    return returnValue;
+  }
+
   /**
    * Devuelve el {@link Documento} con el id indicado.
    * 
    * @param id Identificador de {@link Documento}.
    * @return {@link Documento} correspondiente al id
    */
+  @Cacheable(cacheNames = CacheConfig.DOCUMENTO_CACHE, key = "#id")
   public Documento findById(String id) {
     log.debug("findById(String id) - start");
 
@@ -176,23 +471,207 @@ public class DocumentoService {
     return returnValue;
   }
 
+  /**
+   * Devuelve una página filtrada de {@link Documento} que tienen alguno de los
+   * ids de la lista sin calcular el número total de elementos.
+   * 
+   * @param ids    identificadores de {@link Documento}.
+   * @param query  filtro de búsqueda.
+   * @param paging {@link Pageable}.
+   * @return el {@link Slice} de entidades {@link Documento} filtradas.
+   */
+  public Slice<Documento> findSliceByDocumentoIds(List<String> ids, String query, Pageable paging) {
+    Specification<Documento> specByQuery = SgiRSQLJPASupport.toSpecification(query);
+    Specification<Documento> specByDocumentoRefs = DocumentoSpecifications.byDocumentoRefs(ids);
+
+    Specification<Documento> specs = Specification.where(specByDocumentoRefs).and(specByQuery);
+
+    Slice<Documento> returnValue = repository.findSlice(specs, paging);
+    return returnValue;
+  }
+
+  /**
+   * Devuelve una lista paginada y filtrada con los campos indicados de los
+   * {@link Documento} que tienen alguno de los ids de la lista.
+   * 
+   * @param ids    identificadores de {@link Documento}.
+   * @param query  filtro de búsqueda.
+   * @param paging {@link Pageable}.
+   * @param fields campos a devolver.
+   * @param count  indica si se calcula el número total de elementos (si no, se
+   *               devuelve un {@link Slice}).
+   * @return el listado con los campos de los {@link Documento}.
+   */
+  public Slice<Map<String, Object>> findByDocumentoIds(List<String> ids, String query, Pageable paging,
+      List<String> fields, boolean count) {
+    Specification<Documento> specByQuery = SgiRSQLJPASupport.toSpecification(query);
+    Specification<Documento> specByDocumentoRefs = DocumentoSpecifications.byDocumentoRefs(ids);
+
+    Specification<Documento> specs = Specification.where(specByDocumentoRefs).and(specByQuery);
+
+    Slice<Map<String, Object>> returnValue = repository.findAllProjected(specs, paging, fields, count);
+    return returnValue;
+  }
+
+  /**
+   * Devuelve una página filtrada de {@link Documento} que tienen alguno de los
+   * ids de la lista, ordenados por <code>(fechaCreacion, documentoRef)</code> a
+   * continuación del cursor indicado.
+   * 
+   * @param ids    identificadores de {@link Documento}.
+   * @param query  filtro de búsqueda.
+   * @param cursor cursor devuelto en la página anterior (<code>null</code> para
+   *               la primera página).
+   * @param size   tamaño de la página.
+   * @return la página de {@link Documento}.
+   */
+  public KeysetPage<Documento> findByDocumentoIds(List<String> ids, String query, String cursor, int size) {
+    log.debug("findByDocumentoIds(List<String> ids, String query, String cursor, int size) - start");
+    Specification<Documento> specByQuery = SgiRSQLJPASupport.toSpecification(query);
+    Specification<Documento> specByDocumentoRefs = DocumentoSpecifications.byDocumentoRefs(ids);
+
+    Specification<Documento> specs = Specification.where(specByDocumentoRefs).and(specByQuery);
+
+    KeysetPage<Documento> returnValue = findAll(specs, cursor, size);
+    log.debug("findByDocumentoIds(List<String> ids, String query, String cursor, int size) - end");
+    return returnValue;
+  }
+
+  /**
+   * Devuelve los {@link Documento} cuyo fichero tiene el hash indicado.
+   * 
+   * @param hash hash (SHA-256 hexadecimal) del fichero.
+   * @return las entidades {@link Documento}.
+   */
+  public List<Documento> findByHash(String hash) {
+    log.debug("findByHash(String hash) - start");
+    List<Documento> returnValue = repository.findByHash(hash.toLowerCase(Locale.ROOT));
+    log.debug("findByHash(String hash) - end");
+    return returnValue;
+  }
+
+  /**
+   * Devuelve los {@link Documento} con los ids indicados, en el mismo orden y sin
+   * repetidos.
+   * 
+   * @param ids identificadores de {@link Documento}.
+   * @return las entidades {@link Documento}.
+   * @throws DocumentoNotFoundException si alguno de los {@link Documento} no
+   *                                    existe.
+   */
+  public List<Documento> findAllByDocumentoRefs(List<String> ids) {
+    log.debug("findAllByDocumentoRefs(List<String> ids) - start");
+    Set<String> uniqueIds = new LinkedHashSet<>(ids);
+    Map<String, Documento> documentos = findMapByDocumentoRefs(new ArrayList<>(uniqueIds), null);
+
+    List<Documento> returnValue = new ArrayList<>(uniqueIds.size());
+    for (String id : uniqueIds) {
+      Documento documento = documentos.get(id);
+      if (documento == null) {
+        throw new DocumentoNotFoundException(id);
+      }
+      returnValue.add(documento);
+    }
+    log.debug("findAllByDocumentoRefs(List<String> ids) - end");
+    return returnValue;
+  }
+
+  /**
+   * Devuelve los {@link Documento} que tienen alguno de los ids de la lista y
+   * cumplen el filtro, en el orden de los ids y sin repetidos. Los ids que no
+   * existen se ignoran.
+   * 
+   * Los ids se consultan en bloques de
+   * {@link DocumentoSpecifications#MAX_IN_LIST_SIZE}, por lo que se pueden
+   * consultar decenas de miles sin superar los límites de parámetros de la base
+   * de datos y con un coste proporcional a su número.
+   * 
+   * @param ids   identificadores de {@link Documento}.
+   * @param query filtro de búsqueda.
+   * @return las entidades {@link Documento}.
+   */
+  public List<Documento> findByDocumentoRefs(List<String> ids, String query) {
+    log.debug("findByDocumentoRefs(List<String> ids, String query) - start");
+    Set<String> uniqueIds = new LinkedHashSet<>(ids);
+    Map<String, Documento> documentos = findMapByDocumentoRefs(new ArrayList<>(uniqueIds),
+        SgiRSQLJPASupport.toSpecification(query));
+
+    List<Documento> returnValue = uniqueIds.stream().map(documentos::get).filter(Objects::nonNull)
+        .collect(Collectors.toList());
+    log.debug("findByDocumentoRefs(List<String> ids, String query) - end");
+    return returnValue;
+  }
+
   /**
    * Devuelve el {@link Resource} del {@link Documento} con el id indicado.
    * 
    * @return {@link Resource} correspondiente al id del {@link Documento}.
    */
   public Resource getDocumentoResource(Documento documento) {
-    Resource resource = StoreUtils.getResource(storeProperties.getPath(), documento);
+    Resource resource = storeService.getResource(documento);
+
+    if (!resource.exists()) {
+      metrics.archivoNotFound(documento.getTipo());
+      throw new ArchivoNotFoundException(documento.getDocumentoRef());
+    }
+    return resource;
+  }
+
+  /**
+   * Devuelve el {@link Resource} del fichero del {@link Documento} tal como está
+   * guardado en el store, sin descomprimir.
+   * 
+   * @param documento el {@link Documento}.
+   * @return {@link Resource} con el fichero del {@link Documento}.
+   */
+  public Resource getDocumentoEncodedResource(Documento documento) {
+    Resource resource = storeService.getEncodedResource(documento);
 
     if (!resource.exists()) {
+      metrics.archivoNotFound(documento.getTipo());
       throw new ArchivoNotFoundException(documento.getDocumentoRef());
     }
     return resource;
   }
 
-  private String getHashFile(File file) throws IOException, NoSuchAlgorithmException {
-    // Use SHA-256 algorithm
-    MessageDigest shaDigest = MessageDigest.getInstance("SHA-256");
-    return StoreUtils.getFileChecksum(shaDigest, file);
+  private Map<String, Documento> findMapByDocumentoRefs(List<String> ids, Specification<Documento> spec) {
+    Map<String, Documento> documentos = new HashMap<>();
+    for (int i = 0; i < ids.size(); i += DocumentoSpecifications.MAX_IN_LIST_SIZE) {
+      List<String> chunk = ids.subList(i, Math.min(i + DocumentoSpecifications.MAX_IN_LIST_SIZE, ids.size()));
+      Specification<Documento> specs = Specification.where(DocumentoSpecifications.byDocumentoRefs(chunk)).and(spec);
+      for (Documento documento : repository.findAll(specs)) {
+        documentos.put(documento.getDocumentoRef(), documento);
+      }
+    }
+    return documentos;
+  }
+
+  private KeysetPage<Documento> findAll(Specification<Documento> spec, String cursor, int size) {
+    Assert.isTrue(size > 0 && size <= MAX_KEYSET_PAGE_SIZE, "size must be between 1 and " + MAX_KEYSET_PAGE_SIZE);
+    // One extra row tells whether there is a next page without counting
+    List<Documento> documentos = repository.findAllAfter(spec,
+        StringUtils.hasText(cursor) ? KeysetCursor.decode(cursor) : null, size + 1);
+    if (documentos.size() <= size) {
+      return new KeysetPage<>(documentos, null);
+    }
+    List<Documento> content = new ArrayList<>(documentos.subList(0, size));
+    return new KeysetPage<>(content, KeysetCursor.after(content.get(size - 1)).encode());
+  }
+
+  private StagedFile stage(Resource file, String tipo) {
+    try (InputStream content = file.getInputStream()) {
+      return storeService.stage(content, tipo);
+    } catch (IOException io) {
+      throw new UncheckedIOException(io);
+    }
+  }
+
+  private void assertNew(Documento documento) {
+    Assert.isNull(documento.getDocumentoRef(),
+        // Defer message resolution untill is needed
+        () -> ProblemMessage.builder().key(Assert.class, PROBLEM_MESSAGE_ISNULL)
+            .parameter(PROBLEM_MESSAGE_PARAMETER_FIELD, ApplicationContextSupport.getMessage(MESSAGE_KEY_DOCUMENTO_REF))
+            .parameter(PROBLEM_MESSAGE_PARAMETER_ENTITY, ApplicationContextSupport.getMessage(Documento.class))
+            .build());
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,449 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.FSDirectory;
+import org.crue.hercules.sgi.sgdoc.config.ExecutorConfig;
+import org.crue.hercules.sgi.sgdoc.config.SearchProperties;
+import org.crue.hercules.sgi.sgdoc.dto.DocumentoSearchResult;
+import org.crue.hercules.sgi.sgdoc.dto.IndexacionEstado;
+import org.crue.hercules.sgi.sgdoc.event.DocumentoCreatedEvent;
+import org.crue.hercules.sgi.sgdoc.event.DocumentoDeletedEvent;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
+import org.crue.hercules.sgi.sgdoc.utils.KeysetCursor;
+import org.crue.hercules.sgi.sgdoc.utils.TextExtractionUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.Assert;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Búsqueda por texto sobre el nombre y el contenido de los {@link Documento}.
+ * 
+ * El índice (Lucene) se guarda en un directorio local y se actualiza en segundo
+ * plano cuando se confirma la creación o el borrado de un {@link Documento},
+ * por lo que la indexación no retrasa la respuesta de la subida. Los cambios
+ * son visibles en las búsquedas en cuanto se indexan y se confirman a disco
+ * periódicamente.
+ * 
+ * Los eventos de creación y borrado solo llegan al nodo que atiende la
+ * petición, por lo que el servicio debe estar activo en un único nodo (o en
+ * nodos que compartan el directorio del índice y la instancia que escribe en
+ * él). Está desactivado por defecto y se activa en ese nodo con
+ * <code>sgi.search.enabled</code>.
+ * 
+ * El índice se puede reconstruir en cualquier momento a partir de la tabla de
+ * documentos ({@link #rebuild()}) y se reconstruye al arrancar si no existe o
+ * no tiene los mismos documentos que la tabla, por ejemplo porque se han
+ * perdido los cambios no confirmados a disco en una caída del nodo.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "sgi.search.enabled", havingValue = "true")
+public class SearchService {
+
+  private static final String DOCUMENTO_REF = "documentoRef";
+  private static final String NOMBRE = "nombre";
+  private static final String CONTENIDO = "contenido";
+  /** Reconstrucción en la que se ha indexado el documento */
+  private static final String GENERACION = "generacion";
+  /** Número máximo de resultados de una búsqueda sin paginar */
+  private static final int MAX_UNPAGED_RESULTS = 1000;
+
+  /** Contenido almacenado y con offsets en el índice para poder resaltarlo */
+  private static final FieldType CONTENIDO_TYPE = new FieldType(TextField.TYPE_STORED);
+  static {
+    CONTENIDO_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    CONTENIDO_TYPE.freeze();
+  }
+
+  /** Search Properties */
+  private final SearchProperties searchProperties;
+  /** Store service */
+  private final StoreService storeService;
+  /** Documento repository */
+  private final DocumentoRepository documentoRepository;
+  /** Executor en el que se recorre la tabla */
+  private final TaskExecutor taskExecutor;
+  /** Executor en el que se indexan los documentos */
+  private final TaskExecutor searchTaskExecutor;
+
+  private final Analyzer analyzer = new StandardAnalyzer();
+  private FSDirectory directory;
+  private IndexWriter indexWriter;
+  private SearcherManager searcherManager;
+  /** Indica si el índice no existía al arrancar */
+  private boolean indiceNuevo;
+
+  private final AtomicBoolean enCurso = new AtomicBoolean();
+  private final AtomicBoolean detener = new AtomicBoolean();
+  private final AtomicLong indexados = new AtomicLong();
+  private final AtomicLong errores = new AtomicLong();
+  private volatile String generacion = UUID.randomUUID().toString();
+  private volatile LocalDateTime fechaInicio;
+  private volatile LocalDateTime fechaFin;
+
+  public SearchService(SearchProperties searchProperties, StoreService storeService,
+      DocumentoRepository documentoRepository,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor,
+      @Qualifier(ExecutorConfig.SEARCH_TASK_EXECUTOR) TaskExecutor searchTaskExecutor) {
+    this.searchProperties = searchProperties;
+    this.storeService = storeService;
+    this.documentoRepository = documentoRepository;
+    this.taskExecutor = taskExecutor;
+    this.searchTaskExecutor = searchTaskExecutor;
+  }
+
+  @PostConstruct
+  public void open() throws IOException {
+    Assert.hasText(searchProperties.getPath(), "sgi.search.path is required");
+    directory = FSDirectory.open(Paths.get(searchProperties.getPath()));
+    indiceNuevo = !DirectoryReader.indexExists(directory);
+    indexWriter = new IndexWriter(directory,
+        new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+    searcherManager = new SearcherManager(indexWriter, null);
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    searcherManager.close();
+    indexWriter.close();
+    directory.close();
+    analyzer.close();
+  }
+
+  /**
+   * Reconstruye el índice al arrancar si no existe o si el número de
+   * documentos del índice no coincide con el de la tabla.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildIfStale() {
+    if (!searchProperties.isRebuildOnStartup()) {
+      return;
+    }
+    long documentosIndice = countIndexed();
+    long documentos = documentoRepository.count();
+    if (indiceNuevo || documentosIndice != documentos) {
+      log.info("Search index is stale ({} indexed, {} documentos), rebuilding it", documentosIndice, documentos);
+      rebuild();
+    }
+  }
+
+  /**
+   * Devuelve el estado de la última reconstrucción del índice.
+   *
+   * @return el {@link IndexacionEstado}.
+   */
+  public IndexacionEstado getEstado() {
+    return new IndexacionEstado(enCurso.get(), fechaInicio, fechaFin, indexados.get(), errores.get(),
+        countIndexed());
+  }
+
+  /**
+   * Inicia en segundo plano la reconstrucción del índice a partir de la tabla
+   * de documentos. Las búsquedas siguen usando el índice actual mientras tanto
+   * y al terminar se eliminan del índice los documentos que ya no existen. No
+   * tiene efecto si ya hay una reconstrucción en curso.
+   *
+   * @return el {@link IndexacionEstado}.
+   */
+  public IndexacionEstado rebuild() {
+    log.debug("rebuild() - start");
+    if (enCurso.compareAndSet(false, true)) {
+      detener.set(false);
+      indexados.set(0);
+      errores.set(0);
+      fechaInicio = LocalDateTime.now();
+      fechaFin = null;
+      // Documents indexed from now on (walk or events) belong to this rebuild
+      generacion = UUID.randomUUID().toString();
+      try {
+        taskExecutor.execute(this::reindex);
+      } catch (RuntimeException e) {
+        enCurso.set(false);
+        throw e;
+      }
+    }
+    log.debug("rebuild() - end");
+    return getEstado();
+  }
+
+  /**
+   * Detiene la reconstrucción en curso al terminar el lote actual. Los
+   * documentos de una reconstrucción detenida no se eliminan del índice.
+   *
+   * @return el {@link IndexacionEstado}.
+   */
+  public IndexacionEstado stop() {
+    log.debug("stop() - start");
+    detener.set(true);
+    log.debug("stop() - end");
+    return getEstado();
+  }
+
+  /**
+   * Indexa el {@link Documento} creado.
+   * 
+   * @param event el {@link DocumentoCreatedEvent}.
+   */
+  @Async(ExecutorConfig.SEARCH_TASK_EXECUTOR)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onDocumentoCreated(DocumentoCreatedEvent event) {
+    log.debug("onDocumentoCreated(DocumentoCreatedEvent event) - start");
+    Documento documento = event.getDocumento();
+    try {
+      index(documento, generacion);
+      searcherManager.maybeRefresh();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to index documento {}", documento.getDocumentoRef(), e);
+    }
+    log.debug("onDocumentoCreated(DocumentoCreatedEvent event) - end");
+  }
+
+  /**
+   * Elimina del índice el {@link Documento} eliminado.
+   * 
+   * @param event el {@link DocumentoDeletedEvent}.
+   */
+  @Async(ExecutorConfig.SEARCH_TASK_EXECUTOR)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onDocumentoDeleted(DocumentoDeletedEvent event) {
+    log.debug("onDocumentoDeleted(DocumentoDeletedEvent event) - start");
+    String documentoRef = event.getDocumento().getDocumentoRef();
+    try {
+      indexWriter.deleteDocuments(new Term(DOCUMENTO_REF, documentoRef));
+      searcherManager.maybeRefresh();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to remove documento {} from the index", documentoRef, e);
+    }
+    log.debug("onDocumentoDeleted(DocumentoDeletedEvent event) - end");
+  }
+
+  /**
+   * Confirma a disco los cambios del índice.
+   */
+  @Scheduled(fixedDelayString = "${sgi.search.commit-interval:PT1M}")
+  public void commit() {
+    try {
+      if (indexWriter.hasUncommittedChanges()) {
+        indexWriter.commit();
+      }
+    } catch (IOException e) {
+      log.warn("Unable to commit the search index", e);
+    }
+  }
+
+  /**
+   * Devuelve los {@link Documento} cuyo nombre o contenido coincide con el texto
+   * buscado, ordenados por relevancia y con los fragmentos del contenido que
+   * coinciden resaltados.
+   * 
+   * @param text   texto a buscar (sintaxis de consulta de Lucene).
+   * @param paging {@link Pageable}.
+   * @return la página de resultados.
+   */
+  @Transactional(readOnly = true)
+  public Page<DocumentoSearchResult> search(String text, Pageable paging) {
+    log.debug("search(String text, Pageable paging) - start");
+    Query query;
+    try {
+      query = new MultiFieldQueryParser(new String[] { NOMBRE, CONTENIDO }, analyzer).parse(text);
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("Invalid search: " + e.getMessage(), e);
+    }
+
+    int offset = paging.isPaged() ? (int) paging.getOffset() : 0;
+    int size = paging.isPaged() ? paging.getPageSize() : MAX_UNPAGED_RESULTS;
+    try {
+      IndexSearcher searcher = searcherManager.acquire();
+      try {
+        TopScoreDocCollector collector = TopScoreDocCollector.create(offset + size, Integer.MAX_VALUE);
+        searcher.search(query, collector);
+        TopDocs topDocs = collector.topDocs(offset, size);
+
+        UnifiedHighlighter highlighter = new UnifiedHighlighter(searcher, analyzer);
+        highlighter.setMaxLength(searchProperties.getMaxContentLength());
+        String[] fragmentos = highlighter.highlight(CONTENIDO, query, topDocs);
+
+        List<String> documentoRefs = new ArrayList<>(topDocs.scoreDocs.length);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+          documentoRefs.add(searcher.doc(scoreDoc.doc, Collections.singleton(DOCUMENTO_REF)).get(DOCUMENTO_REF));
+        }
+        Map<String, Documento> documentos = documentoRepository.findAllById(documentoRefs).stream()
+            .collect(Collectors.toMap(Documento::getDocumentoRef, Function.identity()));
+
+        List<DocumentoSearchResult> results = new ArrayList<>(documentoRefs.size());
+        for (int i = 0; i < documentoRefs.size(); i++) {
+          Documento documento = documentos.get(documentoRefs.get(i));
+          // Deleted but not yet removed from the index
+          if (documento != null) {
+            results.add(new DocumentoSearchResult(documento, topDocs.scoreDocs[i].score, fragmentos[i]));
+          }
+        }
+        log.debug("search(String text, Pageable paging) - end");
+        return new PageImpl<>(results, paging, collector.getTotalHits());
+      } finally {
+        searcherManager.release(searcher);
+      }
+    } catch (IOException io) {
+      throw new UncheckedIOException(io);
+    }
+  }
+
+  private void reindex() {
+    log.info("Rebuilding the search index");
+    String actual = generacion;
+    boolean completo = false;
+    try {
+      KeysetCursor cursor = null;
+      List<Documento> documentos;
+      do {
+        documentos = documentoRepository.findAllAfter(null, cursor, searchProperties.getRebuildBatchSize());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(documentos.size());
+        for (Documento documento : documentos) {
+          tasks.add(CompletableFuture.runAsync(() -> reindex(documento, actual), searchTaskExecutor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        searcherManager.maybeRefresh();
+        if (!documentos.isEmpty()) {
+          cursor = KeysetCursor.after(documentos.get(documentos.size() - 1));
+        }
+      } while (documentos.size() == searchProperties.getRebuildBatchSize() && !detener.get());
+      completo = !detener.get();
+
+      if (completo) {
+        // Everything not indexed by this rebuild no longer exists
+        indexWriter.deleteDocuments(new BooleanQuery.Builder()
+            .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term(GENERACION, actual)), BooleanClause.Occur.MUST_NOT).build());
+      }
+      indexWriter.commit();
+      searcherManager.maybeRefresh();
+    } catch (IOException | RuntimeException e) {
+      log.error("Search index rebuild aborted", e);
+    } finally {
+      fechaFin = LocalDateTime.now();
+      enCurso.set(false);
+    }
+    log.info("Search index rebuild {}: {} indexed, {} failed", completo ? "finished" : "stopped", indexados.get(),
+        errores.get());
+  }
+
+  private void reindex(Documento documento, String generacion) {
+    try {
+      if (index(documento, generacion)) {
+        indexados.incrementAndGet();
+      } else {
+        errores.incrementAndGet();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to index documento {}", documento.getDocumentoRef(), e);
+      errores.incrementAndGet();
+    }
+  }
+
+  /**
+   * Indexa el documento. Si no se puede extraer el contenido se indexa solo el
+   * nombre, para que el índice tenga siempre los mismos documentos que la tabla.
+   * 
+   * @return <code>false</code> si no se ha podido indexar el contenido.
+   */
+  private boolean index(Documento documento, String generacion) throws IOException {
+    Document document = new Document();
+    document.add(new StringField(DOCUMENTO_REF, documento.getDocumentoRef(), Field.Store.YES));
+    document.add(new StringField(GENERACION, generacion, Field.Store.NO));
+    if (documento.getNombre() != null) {
+      document.add(new TextField(NOMBRE, documento.getNombre(), Field.Store.NO));
+    }
+    boolean extraido = true;
+    try {
+      String contenido = extract(documento);
+      if (contenido != null) {
+        document.add(new Field(CONTENIDO, contenido, CONTENIDO_TYPE));
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to extract the contents of documento {}", documento.getDocumentoRef(), e);
+      extraido = false;
+    }
+    indexWriter.updateDocument(new Term(DOCUMENTO_REF, documento.getDocumentoRef()), document);
+    return extraido;
+  }
+
+  private long countIndexed() {
+    try {
+      IndexSearcher searcher = searcherManager.acquire();
+      try {
+        return searcher.getIndexReader().numDocs();
+      } finally {
+        searcherManager.release(searcher);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private String extract(Documento documento) throws IOException {
+    if (!TextExtractionUtils.isSupported(documento.getTipo())) {
+      return null;
+    }
+    try (InputStream content = storeService.getResource(documento).getInputStream()) {
+      return TextExtractionUtils.extract(content, documento.getTipo(), searchProperties.getMaxContentLength());
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+import org.crue.hercules.sgi.sgdoc.dto.MigracionEstado;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Migración en caliente de los ficheros del store a la
+ * {@link StoreProperties.Layout} configurada.
+ * 
+ * Los ficheros se mueven uno a uno de forma atómica mientras el servicio sigue
+ * atendiendo peticiones: los nuevos ficheros ya se escriben en la organización
+ * configurada y {@link StoreService} busca en ambas, por lo que los ficheros
+ * pendientes de migrar siguen siendo accesibles.
+ */
+@Service
+@Slf4j
+public class StoreLayoutMigrationService {
+
+  private static final String YEAR_DIRECTORY_PATTERN = "\\d{4}";
+  /** Profundidad de los ficheros bajo el directorio del año o de shards */
+  private static final int FILE_DEPTH = 3;
+
+  /** Store Properties */
+  private final StoreProperties storeProperties;
+  /** Documento repository */
+  private final DocumentoRepository documentoRepository;
+  /** Executor en el que se ejecuta la migración */
+  private final TaskExecutor taskExecutor;
+
+  private final AtomicBoolean enCurso = new AtomicBoolean();
+  private final AtomicLong movidos = new AtomicLong();
+  private final AtomicLong omitidos = new AtomicLong();
+  private final AtomicLong errores = new AtomicLong();
+  private volatile LocalDateTime fechaInicio;
+  private volatile LocalDateTime fechaFin;
+
+  public StoreLayoutMigrationService(StoreProperties storeProperties, DocumentoRepository documentoRepository,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor) {
+    this.storeProperties = storeProperties;
+    this.documentoRepository = documentoRepository;
+    this.taskExecutor = taskExecutor;
+  }
+
+  /**
+   * Devuelve el estado de la última migración.
+   * 
+   * @return el {@link MigracionEstado}.
+   */
+  public MigracionEstado getEstado() {
+    return new MigracionEstado(storeProperties.getLayout(), enCurso.get(), fechaInicio, fechaFin, movidos.get(),
+        omitidos.get(), errores.get());
+  }
+
+  /**
+   * Inicia en segundo plano la migración de los ficheros a la
+   * {@link StoreProperties.Layout} configurada. No tiene efecto si ya hay una
+   * migración en curso.
+   * 
+   * @return el {@link MigracionEstado}.
+   */
+  public MigracionEstado start() {
+    log.debug("start() - start");
+    if (enCurso.compareAndSet(false, true)) {
+      movidos.set(0);
+      omitidos.set(0);
+      errores.set(0);
+      fechaInicio = LocalDateTime.now();
+      fechaFin = null;
+      try {
+        taskExecutor.execute(this::migrate);
+      } catch (RuntimeException e) {
+        enCurso.set(false);
+        throw e;
+      }
+    }
+    log.debug("start() - end");
+    return getEstado();
+  }
+
+  private void migrate() {
+    StoreProperties.Layout layout = storeProperties.getLayout();
+    log.info("Migrating store files to the {} layout", layout);
+    try {
+      if (layout == StoreProperties.Layout.SHARDED) {
+        migrateToSharded();
+      } else {
+        migrateToDate();
+      }
+    } catch (IOException | UncheckedIOException e) {
+      log.error("Store layout migration aborted", e);
+    } finally {
+      fechaFin = LocalDateTime.now();
+      enCurso.set(false);
+    }
+    log.info("Store layout migration finished: {} moved, {} skipped, {} failed", movidos.get(), omitidos.get(),
+        errores.get());
+  }
+
+  private void migrateToSharded() throws IOException {
+    Path storePath = Paths.get(storeProperties.getPath());
+    if (!Files.isDirectory(storePath)) {
+      return;
+    }
+    try (DirectoryStream<Path> years = Files.newDirectoryStream(storePath,
+        path -> Files.isDirectory(path) && path.getFileName().toString().matches(YEAR_DIRECTORY_PATTERN))) {
+      for (Path year : years) {
+        try (Stream<Path> files = Files.walk(year, FILE_DEPTH)) {
+          files.filter(Files::isRegularFile).forEach(file -> move(file,
+              StoreUtils.getShardedPath(storeProperties.getPath(), file.getFileName().toString())));
+        }
+        deleteEmptyDirectories(year);
+      }
+    }
+  }
+
+  private void migrateToDate() throws IOException {
+    Path shards = Paths.get(storeProperties.getPath(), StoreUtils.SHARD_DIRECTORY);
+    if (!Files.isDirectory(shards)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(shards, FILE_DEPTH)) {
+      files.filter(Files::isRegularFile).forEach(file -> {
+        Optional<Documento> documento = documentoRepository.findById(file.getFileName().toString());
+        if (documento.isPresent()) {
+          move(file, StoreUtils.getDatePath(storeProperties.getPath(), documento.get()));
+        } else {
+          // Orphan file, the date it belongs to is unknown
+          omitidos.incrementAndGet();
+        }
+      });
+    }
+    deleteEmptyDirectories(shards);
+  }
+
+  private void move(Path source, Path target) {
+    try {
+      StoreUtils.move(source, target);
+      movidos.incrementAndGet();
+    } catch (FileAlreadyExistsException e) {
+      omitidos.incrementAndGet();
+    } catch (IOException e) {
+      log.warn("Unable to move {} to {}", source, target, e);
+      errores.incrementAndGet();
+    }
+  }
+
+  private void deleteEmptyDirectories(Path root) throws IOException {
+    try (Stream<Path> directories = Files.walk(root)) {
+      directories.filter(Files::isDirectory).sorted(Comparator.reverseOrder()).forEach(directory -> {
+        try {
+          Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+          // Still in use
+        } catch (IOException e) {
+          log.debug("Unable to delete {}", directory, e);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,371 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.crue.hercules.sgi.sgdoc.config.ReconcileProperties;
+import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+import org.crue.hercules.sgi.sgdoc.dto.ReconciliacionEstado;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.DocumentoContenido;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoBorradoRepository;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoContenidoRepository;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
+import org.crue.hercules.sgi.sgdoc.repository.specification.DocumentoSpecifications;
+import org.crue.hercules.sgi.sgdoc.utils.KeysetCursor;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Conciliación de los ficheros del store con la tabla de documentos.
+ *
+ * Se procesa un día (directorio <code>YYYY/MM/dd</code>) cada vez: se leen por
+ * lotes los documentos creados ese día y se recorre el directorio
+ * correspondiente, de forma que en memoria sólo hay una partición. Los ficheros
+ * sin documento de más de {@link ReconcileProperties#getGracePeriod()} son
+ * huérfanos (se informa de ellos y, si está activado, se eliminan); de los
+ * documentos sin fichero sólo se informa. La conciliación completa recorre
+ * además los directorios de días sin documentos y los de la organización por
+ * hash del documentoRef y de contenidos deduplicados.
+ */
+@Service
+@Slf4j
+public class StoreReconciliationService {
+
+  /** Número máximo de incidencias en el estado */
+  private static final int MAX_INCIDENCIAS = 100;
+  private static final Pattern YEAR = Pattern.compile("\\d{4}");
+  private static final Pattern MONTH_OR_DAY = Pattern.compile("\\d{2}");
+
+  /** Reconcile Properties */
+  private final ReconcileProperties reconcileProperties;
+  /** Store Properties */
+  private final StoreProperties storeProperties;
+  /** Documento repository */
+  private final DocumentoRepository documentoRepository;
+  /** DocumentoContenido repository */
+  private final DocumentoContenidoRepository documentoContenidoRepository;
+  /** DocumentoBorrado repository */
+  private final DocumentoBorradoRepository documentoBorradoRepository;
+  /** Store service */
+  private final StoreService storeService;
+  /** Executor en el que se concilia el store */
+  private final TaskExecutor taskExecutor;
+
+  private final AtomicBoolean enCurso = new AtomicBoolean();
+  private final AtomicBoolean detener = new AtomicBoolean();
+  private final AtomicLong particiones = new AtomicLong();
+  private final AtomicLong ficheros = new AtomicLong();
+  private final AtomicLong documentos = new AtomicLong();
+  private final AtomicLong huerfanos = new AtomicLong();
+  private final AtomicLong eliminados = new AtomicLong();
+  private final AtomicLong sinFichero = new AtomicLong();
+  private final AtomicLong errores = new AtomicLong();
+  private final Deque<String> incidencias = new ArrayDeque<>();
+  private volatile LocalDateTime fechaInicio;
+  private volatile LocalDateTime fechaFin;
+  private volatile LocalDate desde;
+  private volatile LocalDate hasta;
+  private volatile String particion;
+
+  public StoreReconciliationService(ReconcileProperties reconcileProperties, StoreProperties storeProperties,
+      DocumentoRepository documentoRepository, DocumentoContenidoRepository documentoContenidoRepository,
+      DocumentoBorradoRepository documentoBorradoRepository, StoreService storeService,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor) {
+    this.reconcileProperties = reconcileProperties;
+    this.storeProperties = storeProperties;
+    this.documentoRepository = documentoRepository;
+    this.documentoContenidoRepository = documentoContenidoRepository;
+    this.documentoBorradoRepository = documentoBorradoRepository;
+    this.storeService = storeService;
+    this.taskExecutor = taskExecutor;
+  }
+
+  /**
+   * Devuelve el estado de la última conciliación.
+   *
+   * @return el {@link ReconciliacionEstado}.
+   */
+  public ReconciliacionEstado getEstado() {
+    List<String> lista;
+    synchronized (incidencias) {
+      lista = new ArrayList<>(incidencias);
+    }
+    return new ReconciliacionEstado(enCurso.get(), fechaInicio, fechaFin, desde, hasta, particion, particiones.get(),
+        ficheros.get(), documentos.get(), huerfanos.get(), eliminados.get(), sinFichero.get(), errores.get(), lista);
+  }
+
+  /**
+   * Inicia la conciliación periódica de los últimos días si está activada.
+   */
+  @Scheduled(initialDelayString = "${sgi.reconcile.initial-delay:PT2H}",
+      fixedDelayString = "${sgi.reconcile.interval:P1D}")
+  public void scheduledStart() {
+    if (reconcileProperties.isEnabled()) {
+      LocalDate hoy = LocalDate.now();
+      start(hoy.minusDays(reconcileProperties.getDays()), hoy);
+    }
+  }
+
+  /**
+   * Inicia en segundo plano la conciliación de los días indicados o, si no se
+   * indica ninguno, de todo el store. No tiene efecto si ya hay una conciliación
+   * en curso.
+   *
+   * @param desde primer día (<code>null</code> para el primer documento).
+   * @param hasta último día (<code>null</code> para el último documento).
+   * @return el {@link ReconciliacionEstado}.
+   */
+  public ReconciliacionEstado start(LocalDate desde, LocalDate hasta) {
+    log.debug("start(LocalDate desde, LocalDate hasta) - start");
+    if (enCurso.compareAndSet(false, true)) {
+      detener.set(false);
+      particiones.set(0);
+      ficheros.set(0);
+      documentos.set(0);
+      huerfanos.set(0);
+      eliminados.set(0);
+      sinFichero.set(0);
+      errores.set(0);
+      synchronized (incidencias) {
+        incidencias.clear();
+      }
+      this.desde = desde;
+      this.hasta = hasta;
+      particion = null;
+      fechaInicio = LocalDateTime.now();
+      fechaFin = null;
+      try {
+        taskExecutor.execute(() -> reconcile(desde, hasta));
+      } catch (RuntimeException e) {
+        enCurso.set(false);
+        throw e;
+      }
+    }
+    log.debug("start(LocalDate desde, LocalDate hasta) - end");
+    return getEstado();
+  }
+
+  /**
+   * Detiene la conciliación en curso al terminar la partición actual.
+   *
+   * @return el {@link ReconciliacionEstado}.
+   */
+  public ReconciliacionEstado stop() {
+    log.debug("stop() - start");
+    detener.set(true);
+    log.debug("stop() - end");
+    return getEstado();
+  }
+
+  private void reconcile(LocalDate desde, LocalDate hasta) {
+    boolean completa = desde == null && hasta == null;
+    log.info("Reconciling the store files with the documents from {} to {}", completa ? "the first" : desde,
+        completa ? "the last" : hasta);
+    Set<Path> visitados = new HashSet<>();
+    try {
+      LocalDate primero = desde != null ? desde : toLocalDate(documentoRepository.findMinFechaCreacion());
+      LocalDate ultimo = hasta != null ? hasta : toLocalDate(documentoRepository.findMaxFechaCreacion());
+      if (primero != null && ultimo != null) {
+        for (LocalDate dia = primero; !dia.isAfter(ultimo) && !detener.get(); dia = dia.plusDays(1)) {
+          visitados.add(reconcileDia(dia));
+        }
+      }
+
+      if (completa) {
+        Path storePath = Paths.get(storeProperties.getPath());
+        // Days without any document left in the table
+        reconcileDirectories(storePath, 3, this::isDateDirectory, visitados::contains, this::findDocumentoRefs);
+        reconcileDirectories(storePath.resolve(StoreUtils.SHARD_DIRECTORY), 2, directory -> true, directory -> false,
+            this::findDocumentoRefs);
+        reconcileDirectories(storePath.resolve(StoreUtils.BLOB_DIRECTORY), 2, directory -> true, directory -> false,
+            this::findHashes);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("Store reconciliation aborted", e);
+      errores.incrementAndGet();
+    } finally {
+      particion = null;
+      fechaFin = LocalDateTime.now();
+      enCurso.set(false);
+    }
+    log.info("Store reconciliation finished: {} files, {} documents, {} orphans ({} deleted), {} missing files",
+        ficheros.get(), documentos.get(), huerfanos.get(), eliminados.get(), sinFichero.get());
+  }
+
+  /**
+   * Concilia los documentos creados el día indicado con el directorio de ese día.
+   *
+   * @return el directorio conciliado.
+   */
+  private Path reconcileDia(LocalDate dia) throws IOException {
+    particion = dia.toString();
+    Map<String, Documento> pendientes = new HashMap<>();
+    Specification<Documento> spec = DocumentoSpecifications.byFechaCreacionBetween(dia.atStartOfDay(),
+        dia.plusDays(1).atStartOfDay());
+    KeysetCursor cursor = null;
+    List<Documento> lote;
+    do {
+      lote = documentoRepository.findAllAfter(spec, cursor, reconcileProperties.getBatchSize());
+      lote.forEach(documento -> pendientes.put(documento.getDocumentoRef(), documento));
+      if (!lote.isEmpty()) {
+        cursor = KeysetCursor.after(lote.get(lote.size() - 1));
+      }
+    } while (lote.size() == reconcileProperties.getBatchSize());
+    documentos.addAndGet(pendientes.size());
+
+    Path directory = StoreUtils.getDateDirectory(storeProperties.getPath(), dia);
+    reconcileDirectory(directory, name -> pendientes.remove(name) != null, this::findDocumentoRefs);
+
+    // Not in the date directory: may live in the sharded layout or be a
+    // deduplicated blob
+    for (Documento documento : pendientes.values()) {
+      if (!documento.getDocumentoRef().startsWith(StoreUtils.SAMPLE_DATA_PREFIX)
+          && !storeService.getEncodedResource(documento).exists()) {
+        log.warn("Missing file of documento {}", documento.getDocumentoRef());
+        sinFichero.incrementAndGet();
+        addIncidencia("missing " + documento.getDocumentoRef());
+      }
+    }
+    particiones.incrementAndGet();
+    return directory;
+  }
+
+  /**
+   * Concilia los directorios que están a la profundidad indicada.
+   */
+  private void reconcileDirectories(Path root, int depth, Predicate<Path> filter, Predicate<Path> skip,
+      Function<List<String>, Set<String>> existing) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(root, depth)) {
+      Iterator<Path> directories = paths
+          .filter(path -> root.relativize(path).getNameCount() == depth && Files.isDirectory(path))
+          .filter(path -> filter.test(root.relativize(path))).iterator();
+      while (directories.hasNext() && !detener.get()) {
+        Path directory = directories.next();
+        if (!skip.test(directory)) {
+          particion = directory.toString();
+          reconcileDirectory(directory, name -> false, existing);
+          particiones.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Recorre los ficheros del directorio y comprueba por lotes en la base de
+   * datos los que no son conocidos.
+   */
+  private void reconcileDirectory(Path directory, Predicate<String> known,
+      Function<List<String>, Set<String>> existing) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    List<Path> candidatos = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+      for (Path file : files) {
+        ficheros.incrementAndGet();
+        if (!known.test(file.getFileName().toString())) {
+          candidatos.add(file);
+          if (candidatos.size() == DocumentoSpecifications.MAX_IN_LIST_SIZE) {
+            reconcileCandidatos(candidatos, existing);
+            candidatos.clear();
+          }
+        }
+      }
+    }
+    reconcileCandidatos(candidatos, existing);
+  }
+
+  private void reconcileCandidatos(List<Path> candidatos, Function<List<String>, Set<String>> existing) {
+    if (candidatos.isEmpty()) {
+      return;
+    }
+    Set<String> existentes = existing
+        .apply(candidatos.stream().map(file -> file.getFileName().toString()).collect(Collectors.toList()));
+    Instant limite = Instant.now().minus(reconcileProperties.getGracePeriod());
+    for (Path file : candidatos) {
+      if (existentes.contains(file.getFileName().toString())) {
+        continue;
+      }
+      try {
+        if (Files.getLastModifiedTime(file).toInstant().isAfter(limite)) {
+          // May belong to a document whose transaction is not committed yet
+          continue;
+        }
+        log.warn("Orphan store file {}", file);
+        huerfanos.incrementAndGet();
+        addIncidencia("orphan " + file);
+        if (reconcileProperties.isReclaim() && Files.deleteIfExists(file)) {
+          eliminados.incrementAndGet();
+        }
+      } catch (IOException e) {
+        log.warn("Unable to reconcile the store file {}", file, e);
+        errores.incrementAndGet();
+      }
+    }
+  }
+
+  private Set<String> findDocumentoRefs(List<String> documentoRefs) {
+    Set<String> returnValue = new HashSet<>(documentoRepository.findDocumentoRefs(documentoRefs));
+    // Files of deleted documents waiting in the deletion queue are not orphans
+    documentoBorradoRepository.findAllById(documentoRefs)
+        .forEach(borrado -> returnValue.add(borrado.getDocumentoRef()));
+    return returnValue;
+  }
+
+  private Set<String> findHashes(List<String> hashes) {
+    return documentoContenidoRepository.findAllById(hashes).stream().map(DocumentoContenido::getHash)
+        .collect(Collectors.toSet());
+  }
+
+  private boolean isDateDirectory(Path relativePath) {
+    return YEAR.matcher(relativePath.getName(0).toString()).matches()
+        && MONTH_OR_DAY.matcher(relativePath.getName(1).toString()).matches()
+        && MONTH_OR_DAY.matcher(relativePath.getName(2).toString()).matches();
+  }
+
+  private void addIncidencia(String incidencia) {
+    synchronized (incidencias) {
+      if (incidencias.size() == MAX_INCIDENCIAS) {
+        incidencias.removeFirst();
+      }
+      incidencias.addLast(incidencia);
+    }
+  }
+
+  private static LocalDate toLocalDate(LocalDateTime fecha) {
+    return fecha != null ? fecha.toLocalDate() : null;
+  }
+}
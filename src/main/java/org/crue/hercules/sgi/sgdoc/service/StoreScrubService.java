@@ -0,0 +1,234 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.crue.hercules.sgi.sgdoc.config.ExecutorConfig;
+import org.crue.hercules.sgi.sgdoc.config.ScrubProperties;
+import org.crue.hercules.sgi.sgdoc.dto.IntegridadEstado;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
+import org.crue.hercules.sgi.sgdoc.utils.KeysetCursor;
+import org.crue.hercules.sgi.sgdoc.utils.RateLimiter;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Comprobación en segundo plano de la integridad de los ficheros del store.
+ *
+ * Recorre la tabla de documentos por lotes (paginación por cursor) y vuelve a
+ * calcular el hash de cada fichero con varios hilos en paralelo. La lectura se
+ * limita a un número de bytes por segundo para no competir con las peticiones
+ * de los usuarios por el disco.
+ */
+@Service
+@Slf4j
+public class StoreScrubService {
+
+  private static final String HASH_ALGORITHM = "SHA-256";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  /** Número máximo de documentoRef con problemas en el estado */
+  private static final int MAX_DOCUMENTO_REFS = 100;
+
+  /** Scrub Properties */
+  private final ScrubProperties scrubProperties;
+  /** Documento repository */
+  private final DocumentoRepository documentoRepository;
+  /** Store service */
+  private final StoreService storeService;
+  /** Executor en el que se recorre la tabla */
+  private final TaskExecutor taskExecutor;
+  /** Executor en el que se comprueban los ficheros */
+  private final TaskExecutor scrubTaskExecutor;
+
+  private final AtomicBoolean enCurso = new AtomicBoolean();
+  private final AtomicBoolean detener = new AtomicBoolean();
+  private final AtomicLong revisados = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong discrepancias = new AtomicLong();
+  private final AtomicLong ausentes = new AtomicLong();
+  private final AtomicLong errores = new AtomicLong();
+  private final AtomicLong omitidos = new AtomicLong();
+  private final Deque<String> documentoRefs = new ArrayDeque<>();
+  private volatile LocalDateTime fechaInicio;
+  private volatile LocalDateTime fechaFin;
+
+  public StoreScrubService(ScrubProperties scrubProperties, DocumentoRepository documentoRepository,
+      StoreService storeService,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor,
+      @Qualifier(ExecutorConfig.SCRUB_TASK_EXECUTOR) TaskExecutor scrubTaskExecutor) {
+    this.scrubProperties = scrubProperties;
+    this.documentoRepository = documentoRepository;
+    this.storeService = storeService;
+    this.taskExecutor = taskExecutor;
+    this.scrubTaskExecutor = scrubTaskExecutor;
+  }
+
+  /**
+   * Devuelve el estado de la última comprobación.
+   *
+   * @return el {@link IntegridadEstado}.
+   */
+  public IntegridadEstado getEstado() {
+    List<String> refs;
+    synchronized (documentoRefs) {
+      refs = new ArrayList<>(documentoRefs);
+    }
+    return new IntegridadEstado(enCurso.get(), fechaInicio, fechaFin, revisados.get(), bytes.get(),
+        discrepancias.get(), ausentes.get(), errores.get(), omitidos.get(), refs);
+  }
+
+  /**
+   * Inicia la comprobación periódica si está activada.
+   */
+  @Scheduled(initialDelayString = "${sgi.scrub.initial-delay:PT1H}", fixedDelayString = "${sgi.scrub.interval:P7D}")
+  public void scheduledStart() {
+    if (scrubProperties.isEnabled()) {
+      start();
+    }
+  }
+
+  /**
+   * Inicia en segundo plano la comprobación de todos los ficheros. No tiene
+   * efecto si ya hay una comprobación en curso.
+   *
+   * @return el {@link IntegridadEstado}.
+   */
+  public IntegridadEstado start() {
+    log.debug("start() - start");
+    if (enCurso.compareAndSet(false, true)) {
+      detener.set(false);
+      revisados.set(0);
+      bytes.set(0);
+      discrepancias.set(0);
+      ausentes.set(0);
+      errores.set(0);
+      omitidos.set(0);
+      synchronized (documentoRefs) {
+        documentoRefs.clear();
+      }
+      fechaInicio = LocalDateTime.now();
+      fechaFin = null;
+      try {
+        taskExecutor.execute(this::scrub);
+      } catch (RuntimeException e) {
+        enCurso.set(false);
+        throw e;
+      }
+    }
+    log.debug("start() - end");
+    return getEstado();
+  }
+
+  /**
+   * Detiene la comprobación en curso al terminar el lote actual.
+   *
+   * @return el {@link IntegridadEstado}.
+   */
+  public IntegridadEstado stop() {
+    log.debug("stop() - start");
+    detener.set(true);
+    log.debug("stop() - end");
+    return getEstado();
+  }
+
+  private void scrub() {
+    log.info("Checking the integrity of the store files");
+    RateLimiter rateLimiter = new RateLimiter(scrubProperties.getBytesPerSecond().toBytes());
+    try {
+      KeysetCursor cursor = null;
+      List<Documento> documentos;
+      do {
+        documentos = documentoRepository.findAllAfter(null, cursor, scrubProperties.getBatchSize());
+        List<CompletableFuture<Void>> checks = new ArrayList<>(documentos.size());
+        for (Documento documento : documentos) {
+          checks.add(CompletableFuture.runAsync(() -> check(documento, rateLimiter), scrubTaskExecutor));
+        }
+        CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).join();
+        if (!documentos.isEmpty()) {
+          cursor = KeysetCursor.after(documentos.get(documentos.size() - 1));
+        }
+      } while (documentos.size() == scrubProperties.getBatchSize() && !detener.get());
+    } catch (RuntimeException e) {
+      log.error("Store integrity check aborted", e);
+    } finally {
+      fechaFin = LocalDateTime.now();
+      enCurso.set(false);
+    }
+    log.info("Store integrity check finished: {} checked, {} mismatched, {} missing, {} failed", revisados.get(),
+        discrepancias.get(), ausentes.get(), errores.get());
+  }
+
+  private void check(Documento documento, RateLimiter rateLimiter) {
+    if (documento.getHash() == null || documento.getDocumentoRef().startsWith(StoreUtils.SAMPLE_DATA_PREFIX)) {
+      omitidos.incrementAndGet();
+      return;
+    }
+    Resource resource = storeService.getResource(documento);
+    if (!resource.exists()) {
+      log.warn("Missing file of documento {}", documento.getDocumentoRef());
+      ausentes.incrementAndGet();
+      addDocumentoRef(documento);
+      return;
+    }
+
+    MessageDigest digest = newDigest();
+    try (InputStream in = resource.getInputStream()) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int bytesCount;
+      while ((bytesCount = in.read(buffer)) != -1) {
+        rateLimiter.acquire(bytesCount);
+        digest.update(buffer, 0, bytesCount);
+        bytes.addAndGet(bytesCount);
+      }
+    } catch (IOException e) {
+      log.warn("Unable to read the file of documento {}", documento.getDocumentoRef(), e);
+      errores.incrementAndGet();
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    revisados.incrementAndGet();
+    if (!documento.getHash().equalsIgnoreCase(StoreUtils.toHex(digest.digest()))) {
+      log.error("The file of documento {} does not match its hash", documento.getDocumentoRef());
+      discrepancias.incrementAndGet();
+      addDocumentoRef(documento);
+    }
+  }
+
+  private void addDocumentoRef(Documento documento) {
+    synchronized (documentoRefs) {
+      if (documentoRefs.size() == MAX_DOCUMENTO_REFS) {
+        documentoRefs.removeFirst();
+      }
+      documentoRefs.addLast(documento.getDocumentoRef());
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
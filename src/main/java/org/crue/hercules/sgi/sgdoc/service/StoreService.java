@@ -0,0 +1,448 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import org.crue.hercules.sgi.sgdoc.actuate.DocumentoMetrics;
+import org.crue.hercules.sgi.sgdoc.config.ExecutorConfig;
+import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.DocumentoContenido;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoContenidoRepository;
+import org.crue.hercules.sgi.sgdoc.utils.GzipResource;
+import org.crue.hercules.sgi.sgdoc.utils.MerkleUtils;
+import org.crue.hercules.sgi.sgdoc.utils.StagedFile;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Servicio de acceso a los ficheros del store.
+ * 
+ * En modo {@link StoreProperties.Mode#DEDUPLICATED} cada contenido distinto se
+ * guarda una única vez (por hash) y se lleva la cuenta de los {@link Documento}
+ * que lo referencian en {@link DocumentoContenido}. La resolución y el borrado
+ * tienen en cuenta ambos modos para que se pueda cambiar de uno a otro sin
+ * migrar los ficheros existentes: cada {@link Documento} guarda el modo con el
+ * que se escribió ({@link Documento#getDeduplicado()}).
+ * 
+ * Los contenidos deduplicados sólo se publican o eliminan con la fila de
+ * {@link DocumentoContenido} bloqueada, y el fichero de un contenido que deja
+ * de estar referenciado se elimina después de confirmar la transacción, de
+ * forma que un rollback nunca deja una fila sin su fichero.
+ * 
+ * Del mismo modo, los ficheros se escriben según la
+ * {@link StoreProperties.Layout} configurada pero se buscan también en la otra,
+ * de forma que se pueden migrar de una a otra sin detener el servicio.
+ */
+@Service
+@Slf4j
+public class StoreService {
+
+  private static final String HASH_ALGORITHM = "SHA-256";
+
+  /** Store Properties */
+  private final StoreProperties storeProperties;
+  /** DocumentoContenido repository */
+  private final DocumentoContenidoRepository contenidoRepository;
+  /** Métricas */
+  private final DocumentoMetrics metrics;
+  /** Pool de cálculo de los hashes en árbol */
+  private final ForkJoinPool hashPool;
+  /** Transacciones independientes de la del {@link Documento} */
+  private final TransactionTemplate newTransaction;
+  /** Executor de la eliminación de los contenidos sin referencias */
+  private final TaskExecutor taskExecutor;
+
+  public StoreService(StoreProperties storeProperties, DocumentoContenidoRepository contenidoRepository,
+      DocumentoMetrics metrics, @Qualifier(ExecutorConfig.HASH_FORK_JOIN_POOL) ForkJoinPool hashPool,
+      PlatformTransactionManager transactionManager,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor) {
+    this.storeProperties = storeProperties;
+    this.contenidoRepository = contenidoRepository;
+    this.metrics = metrics;
+    this.hashPool = hashPool;
+    this.newTransaction = new TransactionTemplate(transactionManager);
+    this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.taskExecutor = taskExecutor;
+  }
+
+  /**
+   * Escribe el contenido en el área de preparación del store calculando su hash.
+   * Si la compresión está activada y el tipo es comprimible, el fichero se
+   * escribe comprimido.
+   * 
+   * Lee el contenido completo y calcula el árbol de hashes, por lo que se debe
+   * llamar sin transacción abierta (como hacen las subidas de
+   * {@link DocumentoService} y {@link SubidaService}).
+   * 
+   * @param content contenido a escribir.
+   * @param tipo    tipo (MIME) del contenido.
+   * @return el {@link StagedFile} escrito.
+   * @throws IOException si no se puede escribir el fichero.
+   */
+  public StagedFile stage(InputStream content, String tipo) throws IOException {
+    long start = System.nanoTime();
+    StagedFile staged = StoreUtils.stage(content, StoreUtils.getTmpPath(storeProperties.getPath()), newDigest(),
+        isCompressible(tipo));
+    metrics.recordStoreWrite("stage", tipo, System.nanoTime() - start);
+    metrics.recordHash(tipo, staged.getSize(), staged.getHashTime());
+    try {
+      return reserve(hashTree(staged));
+    } catch (IOException | RuntimeException e) {
+      StoreUtils.discard(staged);
+      throw e;
+    }
+  }
+
+  /**
+   * Calcula la raíz del árbol de hashes del fichero preparado, si está activado.
+   * Se calcula al preparar el fichero y no en {@link #commit(Documento,
+   * StagedFile)} para no leer el fichero completo con una transacción (y, en
+   * modo deduplicado, un bloqueo) abierta. Los ficheros comprimidos no se pueden
+   * leer por bloques, por lo que no la tienen.
+   * 
+   * @param staged el fichero preparado.
+   * @return el fichero preparado con la raíz del árbol de hashes.
+   * @throws IOException si no se puede leer el fichero.
+   */
+  public StagedFile hashTree(StagedFile staged) throws IOException {
+    if (!storeProperties.getTreeHash().isEnabled() || staged.getEncoding() != null
+        || staged.getHashMerkle() != null) {
+      return staged;
+    }
+    return staged.withHashMerkle(MerkleUtils.hash(staged.getPath(), hashPool));
+  }
+
+  /**
+   * En modo deduplicado, crea la fila de {@link DocumentoContenido} del fichero
+   * preparado si no existe, para que {@link #commit(Documento, StagedFile)} sólo
+   * tenga que bloquearla. Bloquear una fila que no existe no bloquea nada, y
+   * crearla desde {@link #commit(Documento, StagedFile)} en una transacción
+   * independiente necesitaría una segunda conexión mientras se mantiene la de la
+   * subida, por lo que se debe llamar sin transacción abierta.
+   * 
+   * @param staged el fichero preparado.
+   * @return el fichero preparado.
+   */
+  public StagedFile reserve(StagedFile staged) {
+    if (storeProperties.getMode() != StoreProperties.Mode.DEDUPLICATED
+        || contenidoRepository.existsById(staged.getHash())) {
+      return staged;
+    }
+    try {
+      newTransaction.execute(status -> contenidoRepository.saveAndFlush(newContenido(staged)));
+    } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+      // Two uploads of the same content inserted it at the same time
+      log.debug("Contenido {} inserted concurrently", staged.getHash());
+    }
+    return staged;
+  }
+
+  /**
+   * Mueve el fichero preparado a su ubicación definitiva en el store y asigna el
+   * hash al {@link Documento}.
+   * 
+   * @param documento el {@link Documento} al que pertenece el fichero.
+   * @param staged    el fichero preparado.
+   * @throws IOException si no se puede mover el fichero.
+   */
+  @Transactional
+  public void commit(Documento documento, StagedFile staged) throws IOException {
+    log.debug("commit(Documento documento, StagedFile staged) - start");
+    long start = System.nanoTime();
+    documento.setHash(staged.getHash());
+    documento.setCodificacion(staged.getEncoding());
+    documento.setHashMerkle(staged.getHashMerkle());
+
+    if (storeProperties.getMode() == StoreProperties.Mode.DEDUPLICATED) {
+      commitDeduplicated(documento, staged);
+      documento.setDeduplicado(true);
+    } else {
+      Path target = getPaths(documento).get(0);
+      StoreUtils.commit(staged, target);
+      deleteOnRollback(target);
+      documento.setDeduplicado(false);
+    }
+    metrics.recordStoreWrite("commit", documento.getTipo(), System.nanoTime() - start);
+    log.debug("commit(Documento documento, StagedFile staged) - end");
+  }
+
+  /**
+   * Devuelve el {@link Resource} con el contenido del {@link Documento}. Si el
+   * fichero está comprimido se descomprime al leerlo.
+   * 
+   * @param documento el {@link Documento}.
+   * @return el {@link Resource} (puede no existir).
+   */
+  public Resource getResource(Documento documento) {
+    Resource resource = getEncodedResource(documento);
+    if (StoreUtils.GZIP_ENCODING.equals(documento.getCodificacion())) {
+      return new GzipResource(resource);
+    }
+    return resource;
+  }
+
+  /**
+   * Devuelve el {@link Resource} con el fichero del {@link Documento} tal como
+   * está guardado en el store (comprimido si su codificación es gzip).
+   * 
+   * @param documento el {@link Documento}.
+   * @return el {@link Resource} (puede no existir).
+   */
+  public Resource getEncodedResource(Documento documento) {
+    if (documento.getDocumentoRef().startsWith(StoreUtils.SAMPLE_DATA_PREFIX)) {
+      return StoreUtils.getResource(storeProperties.getPath(), documento);
+    }
+
+    Path file = findFile(documento);
+    if (file == null && documento.getHash() != null) {
+      Resource blob = new FileSystemResource(StoreUtils.getBlobPath(storeProperties.getPath(), documento.getHash()));
+      if (blob.exists()) {
+        return blob;
+      }
+    }
+    return new FileSystemResource(file != null ? file : getPaths(documento).get(0));
+  }
+
+  /**
+   * Elimina el fichero del {@link Documento}. Si el contenido está deduplicado
+   * sólo se elimina cuando deja de estar referenciado.
+   * 
+   * Sólo se libera la referencia al contenido deduplicado de los
+   * {@link Documento} escritos en ese modo: que falte el fichero propio no
+   * implica que el contenido esté deduplicado (puede haberse borrado ya), y
+   * liberarlo podría eliminar un contenido que usan otros {@link Documento}. Los
+   * {@link Documento} anteriores a guardar el modo en los que no se pudo
+   * deducir ({@link Documento#getDeduplicado()} <code>null</code>) nunca
+   * liberan el contenido.
+   * 
+   * @param documento el {@link Documento}.
+   */
+  @Transactional
+  public void delete(Documento documento) {
+    log.debug("delete(Documento documento) - start");
+    if (documento.getDocumentoRef().startsWith(StoreUtils.SAMPLE_DATA_PREFIX)) {
+      log.debug("delete(Documento documento) - end");
+      return;
+    }
+
+    try {
+      if (Boolean.TRUE.equals(documento.getDeduplicado())) {
+        if (documento.getHash() != null) {
+          release(documento.getHash());
+        }
+      } else {
+        deleteFile(documento);
+      }
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    }
+    log.debug("delete(Documento documento) - end");
+  }
+
+  /**
+   * Rutas en las que puede estar el fichero del {@link Documento}, empezando por
+   * la de la organización configurada.
+   */
+  private List<Path> getPaths(Documento documento) {
+    Path datePath = StoreUtils.getDatePath(storeProperties.getPath(), documento);
+    Path shardedPath = StoreUtils.getShardedPath(storeProperties.getPath(), documento.getDocumentoRef());
+    if (storeProperties.getLayout() == StoreProperties.Layout.SHARDED) {
+      return Arrays.asList(shardedPath, datePath);
+    }
+    return Arrays.asList(datePath, shardedPath);
+  }
+
+  private Path findFile(Documento documento) {
+    List<Path> paths = getPaths(documento);
+    for (Path path : paths) {
+      if (Files.exists(path)) {
+        return path;
+      }
+    }
+    // A layout migration may have moved the file while looking for it
+    return Files.exists(paths.get(0)) ? paths.get(0) : null;
+  }
+
+  private boolean deleteFile(Documento documento) throws IOException {
+    Path file;
+    while ((file = findFile(documento)) != null) {
+      if (Files.deleteIfExists(file)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void commitDeduplicated(Documento documento, StagedFile staged) throws IOException {
+    DocumentoContenido contenido = lockContenido(staged);
+    Path blob = StoreUtils.getBlobPath(storeProperties.getPath(), staged.getHash());
+    if (Files.exists(blob)) {
+      // The stored blob decides whether the content is compressed and thus
+      // whether it has a tree hash, whatever the encoding of this upload
+      documento.setCodificacion(contenido.getCodificacion());
+      documento.setHashMerkle(contenido.getHashMerkle());
+      StoreUtils.discard(staged);
+    } else {
+      // First upload of the content, or the upload that inserted the row rolled
+      // back. On rollback the blob is left in place: it is harmless and the row
+      // (committed on its own by reserve) may be used by the next upload.
+      try {
+        StoreUtils.commit(staged, blob);
+        contenido.setCodificacion(staged.getEncoding());
+        contenido.setHashMerkle(staged.getHashMerkle());
+      } catch (FileAlreadyExistsException e) {
+        // Same hash, same content
+        StoreUtils.discard(staged);
+        documento.setCodificacion(contenido.getCodificacion());
+        documento.setHashMerkle(contenido.getHashMerkle());
+      }
+    }
+    contenido.setReferencias(contenido.getReferencias() + 1);
+  }
+
+  /**
+   * Bloquea la fila del contenido creada al preparar el fichero (ver
+   * {@link #reserve(StagedFile)}). Si se ha eliminado desde entonces (porque
+   * otro {@link Documento} con el mismo contenido ha liberado su última
+   * referencia) se vuelve a insertar en esta transacción, que mantiene bloqueada
+   * la clave hasta confirmarse.
+   */
+  private DocumentoContenido lockContenido(StagedFile staged) {
+    Optional<DocumentoContenido> contenido = contenidoRepository.findByHashForUpdate(staged.getHash());
+    if (contenido.isPresent()) {
+      return contenido.get();
+    }
+    return contenidoRepository.saveAndFlush(newContenido(staged));
+  }
+
+  private static DocumentoContenido newContenido(StagedFile staged) {
+    return new DocumentoContenido(staged.getHash(), 0, LocalDateTime.now(), staged.getEncoding(),
+        staged.getHashMerkle());
+  }
+
+  private void release(String hash) {
+    Optional<DocumentoContenido> contenido = contenidoRepository.findByHashForUpdate(hash);
+    if (!contenido.isPresent()) {
+      return;
+    }
+    int referencias = contenido.get().getReferencias() - 1;
+    contenido.get().setReferencias(Math.max(referencias, 0));
+    if (referencias <= 0) {
+      purgeAfterCommit(hash);
+    }
+  }
+
+  /**
+   * Elimina el contenido cuando se confirma la transacción que ha liberado su
+   * última referencia (mientras no se confirma, la fila puede volver por un
+   * rollback). Se elimina en otro hilo: la conexión de la transacción confirmada
+   * no se libera hasta que terminan las sincronizaciones, y eliminarlo en ellas
+   * necesitaría una segunda conexión.
+   */
+  private void purgeAfterCommit(String hash) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      purge(hash);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        try {
+          taskExecutor.execute(() -> purge(hash));
+        } catch (TaskRejectedException e) {
+          log.warn("Unable to delete unreferenced contenido {}: {}", hash, e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Elimina el fichero y la fila del contenido si sigue sin referencias. El
+   * fichero se elimina con la fila bloqueada: una subida del mismo contenido
+   * espera al bloqueo y, al no encontrar el fichero, publica el suyo. Si falla,
+   * la fila queda sin referencias y el contenido se elimina o se reutiliza más
+   * adelante. Se llama sin transacción abierta.
+   */
+  private void purge(String hash) {
+    try {
+      newTransaction.execute(status -> {
+        contenidoRepository.findByHashForUpdate(hash).filter(contenido -> contenido.getReferencias() <= 0)
+            .ifPresent(contenido -> {
+              try {
+                Files.deleteIfExists(StoreUtils.getBlobPath(storeProperties.getPath(), hash));
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+              contenidoRepository.delete(contenido);
+            });
+        return null;
+      });
+    } catch (RuntimeException e) {
+      log.warn("Unable to delete unreferenced contenido {}", hash, e);
+    }
+  }
+
+  private void deleteOnRollback(Path file) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(int status) {
+        if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+          try {
+            Files.deleteIfExists(file);
+          } catch (IOException e) {
+            log.warn("Unable to delete {} after rollback", file, e);
+          }
+        }
+      }
+    });
+  }
+
+  private boolean isCompressible(String tipo) {
+    if (!storeProperties.getCompression().isEnabled() || tipo == null) {
+      return false;
+    }
+    String type = tipo.toLowerCase(Locale.ROOT);
+    return storeProperties.getCompression().getTypes().stream().anyMatch(type::startsWith);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
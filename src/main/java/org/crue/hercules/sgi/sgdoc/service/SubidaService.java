@@ -0,0 +1,533 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.crue.hercules.sgi.sgdoc.actuate.DocumentoMetrics;
+import org.crue.hercules.sgi.sgdoc.config.StoreProperties;
+import org.crue.hercules.sgi.sgdoc.config.UploadProperties;
+import org.crue.hercules.sgi.sgdoc.dto.SubidaEstado;
+import org.crue.hercules.sgi.sgdoc.exceptions.SubidaNotFoundException;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.Subida;
+import org.crue.hercules.sgi.sgdoc.repository.SubidaRepository;
+import org.crue.hercules.sgi.sgdoc.utils.SizeLimitInputStream;
+import org.crue.hercules.sgi.sgdoc.utils.StagedFile;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Servicio de subidas por fragmentos.
+ * 
+ * Cada fragmento se guarda como un fichero independiente en el directorio de la
+ * {@link Subida}, por lo que se pueden recibir en cualquier orden y en
+ * paralelo. En cuanto están disponibles los fragmentos consecutivos se añaden
+ * al fichero ensamblado a la vez que se calcula su hash, de forma que al
+ * completar la subida sólo quedan por procesar los últimos fragmentos. El
+ * estado se deduce siempre de los ficheros, así que las subidas sobreviven a un
+ * reinicio.
+ * 
+ * Al completar la subida el fichero ensamblado no se mueve al store sino un
+ * enlace a él, de forma que si la creación del {@link Documento} falla la
+ * subida sigue intacta y se puede volver a completar.
+ */
+@Service
+@Slf4j
+@Transactional(readOnly = true)
+public class SubidaService {
+
+  private static final String HASH_ALGORITHM = "SHA-256";
+  private static final String ASSEMBLY_FILE = "assembly";
+  private static final String LOCK_FILE = "lock";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Subida repository */
+  private final SubidaRepository repository;
+  /** Documento service */
+  private final DocumentoService documentoService;
+  /** Store service */
+  private final StoreService storeService;
+  /** Store Properties */
+  private final StoreProperties storeProperties;
+  /** Upload Properties */
+  private final UploadProperties uploadProperties;
+  /** Documento metrics */
+  private final DocumentoMetrics metrics;
+  /** Transacción de creación del {@link Documento} */
+  private final TransactionTemplate transactionTemplate;
+  /** Estado del ensamblado de las subidas en curso en este nodo */
+  private final ConcurrentMap<String, Ensamblado> ensamblados = new ConcurrentHashMap<>();
+
+  public SubidaService(SubidaRepository repository, DocumentoService documentoService, StoreService storeService,
+      StoreProperties storeProperties, UploadProperties uploadProperties, DocumentoMetrics metrics,
+      PlatformTransactionManager transactionManager) {
+    this.repository = repository;
+    this.documentoService = documentoService;
+    this.storeService = storeService;
+    this.storeProperties = storeProperties;
+    this.uploadProperties = uploadProperties;
+    this.metrics = metrics;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Crea una nueva {@link Subida}.
+   * 
+   * @param subida la {@link Subida} con el nombre, tipo y tamaño del fichero.
+   * @return la {@link Subida} creada con el tamaño y número de fragmentos.
+   */
+  @Transactional
+  public Subida create(Subida subida) {
+    log.debug("create(Subida subida) - start");
+    Assert.isNull(subida.getId(), "id must be null");
+    Assert.hasText(subida.getNombre(), "nombre is required");
+    Assert.hasText(subida.getTipo(), "tipo is required");
+    Assert.isTrue(subida.getTamano() != null && subida.getTamano() > 0, "tamano must be greater than 0");
+    long maxFileSize = uploadProperties.getSession().getMaxFileSize().toBytes();
+    if (subida.getTamano() > maxFileSize) {
+      throw new MaxUploadSizeExceededException(maxFileSize);
+    }
+
+    long tamanoFragmento = uploadProperties.getSession().getChunkSize().toBytes();
+    LocalDateTime now = LocalDateTime.now();
+    subida.setId(UUID.randomUUID().toString());
+    subida.setTamanoFragmento(tamanoFragmento);
+    subida.setNumFragmentos((int) ((subida.getTamano() + tamanoFragmento - 1) / tamanoFragmento));
+    subida.setFechaCreacion(now);
+    subida.setFechaCaducidad(now.plus(uploadProperties.getSession().getTimeout()));
+
+    try {
+      Files.createDirectories(getDirectory(subida));
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    }
+
+    Subida returnValue = repository.save(subida);
+    log.debug("create(Subida subida) - end");
+    return returnValue;
+  }
+
+  /**
+   * Devuelve la {@link Subida} con el id indicado.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   * @return la {@link Subida}.
+   * @throws SubidaNotFoundException si no existe o ha caducado.
+   */
+  public Subida findById(String id) {
+    log.debug("findById(String id) - start");
+    Subida returnValue = repository.findById(id)
+        .filter(subida -> subida.getFechaCaducidad().isAfter(LocalDateTime.now()))
+        .orElseThrow(() -> new SubidaNotFoundException(id));
+    log.debug("findById(String id) - end");
+    return returnValue;
+  }
+
+  /**
+   * Devuelve el estado de la {@link Subida} con el id indicado.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   * @return el {@link SubidaEstado}.
+   */
+  public SubidaEstado findEstadoById(String id) {
+    log.debug("findEstadoById(String id) - start");
+    Subida subida = findById(id);
+    Path directory = getDirectory(subida);
+    try {
+      int numEnsamblados = getNumFragmentosEnsamblados(subida, size(directory.resolve(ASSEMBLY_FILE)));
+      List<Integer> recibidos = new ArrayList<>();
+      for (int i = 0; i < subida.getNumFragmentos(); i++) {
+        if (i < numEnsamblados || Files.exists(directory.resolve(getFragmentoName(i)))) {
+          recibidos.add(i);
+        }
+      }
+      log.debug("findEstadoById(String id) - end");
+      return new SubidaEstado(subida, recibidos);
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    }
+  }
+
+  /**
+   * Guarda un fragmento de la {@link Subida}. Volver a enviar un fragmento ya
+   * recibido no tiene efecto.
+   * 
+   * No se mantiene una transacción abierta mientras se recibe el fragmento para
+   * que las subidas en paralelo no agoten las conexiones a la base de datos. Si
+   * entre tanto la {@link Subida} se ha completado o ha caducado, el fragmento
+   * se rechaza (el fichero recibido lo elimina la limpieza de subidas
+   * huérfanas).
+   * 
+   * @param id      Identificador de la {@link Subida}.
+   * @param index   índice del fragmento (empezando en 0).
+   * @param content contenido del fragmento.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void uploadFragmento(String id, int index, InputStream content) {
+    log.debug("uploadFragmento(String id, int index, InputStream content) - start");
+    Subida subida = findById(id);
+    Assert.isTrue(index >= 0 && index < subida.getNumFragmentos(),
+        "index must be between 0 and " + (subida.getNumFragmentos() - 1));
+
+    Path directory = getDirectory(subida);
+    Path fragmento = directory.resolve(getFragmentoName(index));
+    try {
+      if (index >= getNumFragmentosEnsamblados(subida, size(directory.resolve(ASSEMBLY_FILE)))
+          && !Files.exists(fragmento)) {
+        long tamanoFragmento = getTamanoFragmento(subida, index);
+        StagedFile staged = StoreUtils.stage(new SizeLimitInputStream(content, tamanoFragmento), directory, null);
+        try {
+          Assert.isTrue(staged.getSize() == tamanoFragmento, "fragment " + index + " must have "
+              + tamanoFragmento + " bytes");
+          StoreUtils.commit(staged, fragmento);
+        } catch (FileAlreadyExistsException e) {
+          // Received concurrently
+        } finally {
+          StoreUtils.discard(staged);
+        }
+      }
+
+      // The upload may have been completed or expired while the fragment was
+      // received: saving the entity read before would insert it again
+      Subida renovada = transactionTemplate.execute(status -> {
+        Subida locked = repository.findByIdForUpdate(id)
+            .filter(actual -> actual.getFechaCaducidad().isAfter(LocalDateTime.now()))
+            .orElseThrow(() -> new SubidaNotFoundException(id));
+        locked.setFechaCaducidad(LocalDateTime.now().plus(uploadProperties.getSession().getTimeout()));
+        return repository.save(locked);
+      });
+
+      ensamblar(renovada);
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    }
+    log.debug("uploadFragmento(String id, int index, InputStream content) - end");
+  }
+
+  /**
+   * Completa la {@link Subida} creando el {@link Documento} con el fichero
+   * ensamblado.
+   * 
+   * La {@link Subida} se bloquea en la transacción de creación del
+   * {@link Documento}, por lo que si se completa a la vez varias veces sólo una
+   * lo crea (el resto no la encuentran). Los ficheros y el estado en memoria de
+   * la {@link Subida} sólo se eliminan tras confirmar la transacción.
+   * 
+   * En las métricas de creación de documentos se mide el tiempo de completar la
+   * subida, no el de recibir los fragmentos.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   * @return el {@link Documento} creado.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Documento complete(String id) {
+    log.debug("complete(String id) - start");
+    Subida subida = findById(id);
+
+    Timer.Sample sample = metrics.startUpload();
+    boolean error = true;
+    try {
+      Documento returnValue = complete(subida);
+      error = false;
+      log.debug("complete(String id) - end");
+      return returnValue;
+    } finally {
+      metrics.stopUpload(sample, subida.getTipo(), subida.getTamano() != null ? subida.getTamano() : 0, error);
+    }
+  }
+
+  private Documento complete(Subida subida) {
+    String id = subida.getId();
+    Path directory = getDirectory(subida);
+
+    StagedFile assembled;
+    try {
+      assembled = stage(subida);
+    } catch (IOException io) {
+      throw new RuntimeException(io);
+    }
+    StagedFile staged;
+    try {
+      // Before the transaction: it reads the whole file and may insert the
+      // contenido row on its own
+      staged = storeService.reserve(storeService.hashTree(assembled));
+    } catch (IOException io) {
+      StoreUtils.discard(assembled);
+      throw new RuntimeException(io);
+    } catch (RuntimeException e) {
+      StoreUtils.discard(assembled);
+      throw e;
+    }
+
+    try {
+      Documento returnValue = transactionTemplate.execute(status -> {
+        Subida locked = repository.findByIdForUpdate(id).orElseThrow(() -> new SubidaNotFoundException(id));
+
+        Documento documento = new Documento();
+        documento.setNombre(locked.getNombre());
+        documento.setTipo(locked.getTipo());
+        documento.setAutorRef(locked.getAutorRef());
+        documento.setFechaCreacion(LocalDateTime.now());
+        documento.setVersion(1);
+        Documento created = documentoService.create(documento, staged);
+
+        repository.delete(locked);
+        deleteDirectoryAfterCommit(directory);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            ensamblados.remove(id);
+          }
+        });
+        return created;
+      });
+      return returnValue;
+    } finally {
+      // Only left if the Documento has not been created
+      StoreUtils.discard(staged);
+    }
+  }
+
+  /**
+   * Cancela la {@link Subida} eliminando los fragmentos recibidos.
+   * 
+   * @param id Identificador de la {@link Subida}.
+   */
+  @Transactional
+  public void delete(String id) {
+    log.debug("delete(String id) - start");
+    Subida subida = repository.findById(id).orElseThrow(() -> new SubidaNotFoundException(id));
+    repository.delete(subida);
+    ensamblados.remove(id);
+    deleteDirectoryAfterCommit(getDirectory(subida));
+    log.debug("delete(String id) - end");
+  }
+
+  /**
+   * Elimina las {@link Subida} caducadas y los directorios de subidas que ya no
+   * existen.
+   */
+  @Scheduled(fixedDelayString = "${sgi.upload.session.cleanup-interval:PT15M}")
+  @Transactional
+  public void deleteExpired() {
+    log.debug("deleteExpired() - start");
+    for (Subida subida : repository.findByFechaCaducidadBefore(LocalDateTime.now())) {
+      log.info("Deleting expired upload {}", subida.getId());
+      repository.delete(subida);
+      ensamblados.remove(subida.getId());
+      deleteDirectoryAfterCommit(getDirectory(subida));
+    }
+
+    Path uploads = Paths.get(storeProperties.getPath(), StoreUtils.UPLOADS_DIRECTORY);
+    if (Files.isDirectory(uploads)) {
+      Instant limit = Instant.now().minus(uploadProperties.getSession().getTimeout());
+      try (DirectoryStream<Path> directories = Files.newDirectoryStream(uploads)) {
+        for (Path directory : directories) {
+          if (Files.getLastModifiedTime(directory).toInstant().isBefore(limit)
+              && !repository.existsById(directory.getFileName().toString())) {
+            log.info("Deleting orphan upload directory {}", directory);
+            FileSystemUtils.deleteRecursively(directory);
+          }
+        }
+      } catch (IOException io) {
+        log.warn("Unable to clean the uploads directory", io);
+      }
+    }
+    log.debug("deleteExpired() - end");
+  }
+
+  /**
+   * Añade al fichero ensamblado los fragmentos consecutivos disponibles. Un
+   * cerrojo sobre el directorio de la subida evita que varios nodos ensamblen a
+   * la vez, y el estado en memoria se reconstruye a partir del fichero cuando no
+   * se corresponde con él (primer uso, reinicio o avance en otro nodo).
+   */
+  private Ensamblado ensamblar(Subida subida) throws IOException {
+    Path directory = getDirectory(subida);
+    Ensamblado ensamblado = ensamblados.computeIfAbsent(subida.getId(), key -> new Ensamblado());
+    synchronized (ensamblado) {
+      try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE); FileLock lock = lockChannel.lock()) {
+        Path assembly = directory.resolve(ASSEMBLY_FILE);
+        if (ensamblado.digest == null || ensamblado.size != size(assembly)) {
+          rebuild(subida, ensamblado, assembly);
+        }
+
+        try (FileChannel channel = FileChannel.open(assembly, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+          OutputStream out = Channels.newOutputStream(channel);
+          byte[] buffer = new byte[BUFFER_SIZE];
+          while (ensamblado.next < subida.getNumFragmentos()) {
+            Path fragmento = directory.resolve(getFragmentoName(ensamblado.next));
+            if (!Files.exists(fragmento)) {
+              break;
+            }
+            try (InputStream in = Files.newInputStream(fragmento)) {
+              int bytesCount;
+              while ((bytesCount = in.read(buffer)) != -1) {
+                ensamblado.digest.update(buffer, 0, bytesCount);
+                out.write(buffer, 0, bytesCount);
+                ensamblado.size += bytesCount;
+              }
+            }
+            // The fragment can only be deleted once it is safely in the assembly
+            channel.force(false);
+            Files.delete(fragmento);
+            ensamblado.next++;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        ensamblado.digest = null;
+        throw e;
+      }
+      return ensamblado;
+    }
+  }
+
+  /**
+   * Prepara el fichero ensamblado de la {@link Subida} completa: se enlaza (o,
+   * si el sistema de ficheros no lo permite, se copia) en el área de preparación
+   * del store, de forma que al moverlo al store o eliminarlo tras un rollback el
+   * fichero ensamblado no cambia. El hash se calcula sobre una copia del estado
+   * para no alterarlo.
+   */
+  private StagedFile stage(Subida subida) throws IOException {
+    Path directory = getDirectory(subida);
+    Ensamblado ensamblado = ensamblar(subida);
+    synchronized (ensamblado) {
+      Assert.isTrue(ensamblado.next == subida.getNumFragmentos(), "fragments " + ensamblado.next + " to "
+          + (subida.getNumFragmentos() - 1) + " have not been received");
+      String hash;
+      try {
+        hash = StoreUtils.toHex(((MessageDigest) ensamblado.digest.clone()).digest());
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+
+      Path tmpDirectory = StoreUtils.getTmpPath(storeProperties.getPath());
+      Files.createDirectories(tmpDirectory);
+      Path tmp = tmpDirectory.resolve("subida-" + subida.getId() + "-" + UUID.randomUUID() + ".tmp");
+      if (!StoreUtils.link(tmp, directory.resolve(ASSEMBLY_FILE))) {
+        Files.copy(directory.resolve(ASSEMBLY_FILE), tmp);
+      }
+      return new StagedFile(tmp, hash, ensamblado.size);
+    }
+  }
+
+  private void rebuild(Subida subida, Ensamblado ensamblado, Path assembly) throws IOException {
+    int next = getNumFragmentosEnsamblados(subida, size(assembly));
+    long size = next == subida.getNumFragmentos() ? subida.getTamano() : next * subida.getTamanoFragmento();
+    MessageDigest digest = newDigest();
+    if (Files.exists(assembly)) {
+      // Drop a partially appended fragment
+      try (FileChannel channel = FileChannel.open(assembly, StandardOpenOption.WRITE)) {
+        if (channel.size() > size) {
+          channel.truncate(size);
+        }
+      }
+      try (InputStream in = Files.newInputStream(assembly)) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesCount;
+        while ((bytesCount = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, bytesCount);
+        }
+      }
+    }
+    // Fragments appended before a crash but not yet deleted
+    for (int i = 0; i < next; i++) {
+      Files.deleteIfExists(assembly.resolveSibling(getFragmentoName(i)));
+    }
+    ensamblado.digest = digest;
+    ensamblado.size = size;
+    ensamblado.next = next;
+  }
+
+  private int getNumFragmentosEnsamblados(Subida subida, long assemblySize) {
+    if (assemblySize >= subida.getTamano()) {
+      return subida.getNumFragmentos();
+    }
+    return (int) (assemblySize / subida.getTamanoFragmento());
+  }
+
+  private long getTamanoFragmento(Subida subida, int index) {
+    if (index == subida.getNumFragmentos() - 1) {
+      return subida.getTamano() - index * subida.getTamanoFragmento();
+    }
+    return subida.getTamanoFragmento();
+  }
+
+  private Path getDirectory(Subida subida) {
+    return StoreUtils.getUploadPath(storeProperties.getPath(), subida.getId());
+  }
+
+  private static String getFragmentoName(int index) {
+    return String.valueOf(index);
+  }
+
+  private static long size(Path file) throws IOException {
+    return Files.exists(file) ? Files.size(file) : 0;
+  }
+
+  private void deleteDirectoryAfterCommit(Path directory) {
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        try {
+          FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+          log.warn("Unable to delete upload directory {}", directory, e);
+        }
+      }
+    });
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Estado del ensamblado de una {@link Subida} */
+  private static class Ensamblado {
+    /** Hash de los bytes ensamblados */
+    private MessageDigest digest;
+    /** Bytes ensamblados */
+    private long size;
+    /** Siguiente fragmento a ensamblar */
+    private int next;
+  }
+}
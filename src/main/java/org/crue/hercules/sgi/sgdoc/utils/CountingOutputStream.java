@@ -0,0 +1,41 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} que cuenta los bytes escritos. Los de una escritura que
+ * falla no se cuentan.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+  private long count;
+
+  /**
+   * @param out el {@link OutputStream} en el que se escribe.
+   */
+  public CountingOutputStream(OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    count++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    // FilterOutputStream writes byte by byte
+    out.write(b, off, len);
+    count += len;
+  }
+
+  /**
+   * @return número de bytes escritos.
+   */
+  public long getCount() {
+    return count;
+  }
+}
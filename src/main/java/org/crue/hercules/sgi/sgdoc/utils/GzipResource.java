@@ -0,0 +1,49 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * {@link Resource} que descomprime al vuelo el contenido de un fichero
+ * comprimido con gzip.
+ */
+public class GzipResource extends AbstractResource {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Fichero comprimido */
+  private final Resource resource;
+
+  public GzipResource(Resource resource) {
+    this.resource = resource;
+  }
+
+  @Override
+  public boolean exists() {
+    return resource.exists();
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return new GZIPInputStream(resource.getInputStream(), BUFFER_SIZE);
+  }
+
+  @Override
+  public String getFilename() {
+    return resource.getFilename();
+  }
+
+  @Override
+  public long lastModified() throws IOException {
+    return resource.lastModified();
+  }
+
+  @Override
+  public String getDescription() {
+    return "gzip [" + resource.getDescription() + "]";
+  }
+}
@@ -0,0 +1,69 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Posición en un listado de {@link Documento} ordenado por
+ * <code>(fechaCreacion, documentoRef)</code>. Se intercambia con los clientes
+ * como una cadena opaca.
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetCursor {
+
+  private static final String SEPARATOR = "|";
+
+  /** fechaCreacion del último {@link Documento} devuelto */
+  private final LocalDateTime fechaCreacion;
+
+  /** documentoRef del último {@link Documento} devuelto */
+  private final String documentoRef;
+
+  /**
+   * Devuelve el cursor que apunta a continuación del {@link Documento}.
+   *
+   * @param documento el último {@link Documento} de la página.
+   * @return el cursor.
+   */
+  public static KeysetCursor after(Documento documento) {
+    return new KeysetCursor(documento.getFechaCreacion(), documento.getDocumentoRef());
+  }
+
+  /**
+   * Codifica el cursor como una cadena opaca.
+   *
+   * @return el cursor codificado.
+   */
+  public String encode() {
+    String value = fechaCreacion + SEPARATOR + documentoRef;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodifica un cursor obtenido con {@link #encode()}.
+   *
+   * @param cursor el cursor codificado.
+   * @return el cursor.
+   * @throws IllegalArgumentException si el cursor no es válido.
+   */
+  public static KeysetCursor decode(String cursor) {
+    try {
+      String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separator = value.indexOf(SEPARATOR);
+      if (separator < 0) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      return new KeysetCursor(LocalDateTime.parse(value.substring(0, separator)), value.substring(separator + 1));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+  }
+}
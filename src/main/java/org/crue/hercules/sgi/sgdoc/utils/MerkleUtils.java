@@ -0,0 +1,130 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Hash en árbol (Merkle) de los ficheros del store.
+ *
+ * El fichero se divide en bloques de {@value #CHUNK_SIZE} bytes que se procesan
+ * en paralelo. Los bloques se leen con lecturas posicionales en un buffer
+ * reutilizado por cada hilo (no se mapean en memoria: un fichero mapeado no se
+ * libera hasta que actúa el recolector de basura, lo que impide moverlo o
+ * borrarlo en algunos sistemas operativos). Las hojas son
+ * <code>SHA-256(0x00 || bloque)</code> y los nodos
+ * <code>SHA-256(0x01 || izquierdo || derecho)</code>, dividiendo cada rango
+ * de bloques por la mayor potencia de dos menor que su tamaño (como en el RFC
+ * 6962), de forma que la raíz sólo depende del contenido y no del número de
+ * hilos. Sólo se guarda la raíz.
+ */
+public class MerkleUtils {
+
+  /** Tamaño de los bloques del árbol (fijo, la raíz depende de él) */
+  public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final String HASH_ALGORITHM = "SHA-256";
+  private static final byte LEAF_PREFIX = 0x00;
+  private static final byte NODE_PREFIX = 0x01;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal
+      .withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+  private MerkleUtils() {
+    // To prevent instances
+  }
+
+  /**
+   * Calcula la raíz del árbol de hashes del fichero.
+   *
+   * @param file fichero.
+   * @param pool pool en el que se calculan los hashes de los bloques.
+   * @return raíz (hexadecimal) del árbol.
+   * @throws IOException si no se puede leer el fichero.
+   */
+  public static String hash(Path file, ForkJoinPool pool) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long chunks = Math.max(1, (channel.size() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+      return StoreUtils.toHex(pool.invoke(new TreeHashTask(channel, 0, chunks)));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static byte[] hashLeaf(FileChannel channel, long index) throws IOException {
+    long position = index * CHUNK_SIZE;
+    long end = Math.min(position + CHUNK_SIZE, channel.size());
+    MessageDigest digest = newDigest();
+    digest.update(LEAF_PREFIX);
+    ByteBuffer buffer = BUFFER.get();
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int bytesCount = channel.read(buffer, position);
+      if (bytesCount < 0) {
+        throw new EOFException("Unexpected end of file at " + position);
+      }
+      buffer.flip();
+      digest.update(buffer);
+      position += bytesCount;
+    }
+    return digest.digest();
+  }
+
+  private static byte[] hashNode(byte[] left, byte[] right) {
+    MessageDigest digest = newDigest();
+    digest.update(NODE_PREFIX);
+    digest.update(left);
+    digest.update(right);
+    return digest.digest();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Hash del subárbol de los bloques <code>[from, to)</code>.
+   */
+  private static class TreeHashTask extends RecursiveTask<byte[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient FileChannel channel;
+    private final long from;
+    private final long to;
+
+    TreeHashTask(FileChannel channel, long from, long to) {
+      this.channel = channel;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected byte[] compute() {
+      if (to - from == 1) {
+        try {
+          return hashLeaf(channel, from);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      long split = from + Long.highestOneBit(to - from - 1);
+      TreeHashTask left = new TreeHashTask(channel, from, split);
+      left.fork();
+      byte[] right = new TreeHashTask(channel, split, to).compute();
+      return hashNode(left.join(), right);
+    }
+  }
+}
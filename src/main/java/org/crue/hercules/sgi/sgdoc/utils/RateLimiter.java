@@ -0,0 +1,48 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limita el ritmo al que se consumen unidades (por ejemplo bytes) entre todos
+ * los hilos que lo comparten. Cada hilo reserva las unidades que va a consumir
+ * y espera hasta que el ritmo configurado lo permite.
+ */
+public class RateLimiter {
+
+  /** Nanosegundos por unidad (0 para no limitar) */
+  private final double nanosPerPermit;
+  /** Instante (System.nanoTime) a partir del que hay unidades disponibles */
+  private long next = System.nanoTime();
+
+  /**
+   * Crea un limitador.
+   *
+   * @param permitsPerSecond unidades por segundo (0 o menos para no limitar).
+   */
+  public RateLimiter(long permitsPerSecond) {
+    this.nanosPerPermit = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) permitsPerSecond : 0;
+  }
+
+  /**
+   * Reserva las unidades indicadas, esperando si es necesario.
+   *
+   * @param permits unidades a consumir.
+   * @throws InterruptedException si se interrumpe la espera.
+   */
+  public void acquire(long permits) throws InterruptedException {
+    if (nanosPerPermit == 0) {
+      return;
+    }
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      // Unused time is not accumulated, so there are no bursts after idle periods
+      long start = Math.max(next, now);
+      next = start + (long) (permits * nanosPerPermit);
+      wait = start - now;
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+}
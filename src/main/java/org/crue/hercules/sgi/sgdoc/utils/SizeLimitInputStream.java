@@ -0,0 +1,63 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+/**
+ * {@link InputStream} que falla en cuanto se leen más bytes de los permitidos,
+ * sin esperar a leer el contenido completo.
+ */
+public class SizeLimitInputStream extends FilterInputStream {
+
+  private final long maxSize;
+  private long count;
+
+  /**
+   * @param in      el {@link InputStream} a limitar.
+   * @param maxSize número máximo de bytes que se pueden leer.
+   */
+  public SizeLimitInputStream(InputStream in, long maxSize) {
+    super(in);
+    this.maxSize = maxSize;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b != -1) {
+      count(1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int bytesCount = super.read(b, off, len);
+    if (bytesCount > 0) {
+      count(bytesCount);
+    }
+    return bytesCount;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    count(skipped);
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  private void count(long bytesCount) {
+    count += bytesCount;
+    if (count > maxSize) {
+      throw new MaxUploadSizeExceededException(maxSize);
+    }
+  }
+}
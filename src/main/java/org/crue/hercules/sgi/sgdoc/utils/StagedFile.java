@@ -0,0 +1,51 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.nio.file.Path;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Fichero temporal escrito en el área de preparación del store junto con el
+ * hash y el tamaño (del contenido sin comprimir) calculados durante su
+ * escritura.
+ */
+@Getter
+@AllArgsConstructor
+public class StagedFile {
+
+  /** Ruta del fichero temporal */
+  private final Path path;
+
+  /** Hash (hexadecimal) del contenido, si se ha calculado */
+  private final String hash;
+
+  /** Número de bytes del contenido */
+  private final long size;
+
+  /**
+   * Codificación del fichero (<code>gzip</code> si está comprimido,
+   * <code>null</code> si no)
+   */
+  private final String encoding;
+
+  /** Tiempo empleado en calcular el hash (en nanosegundos) */
+  private final long hashTime;
+
+  /** Raíz del árbol de hashes (Merkle) del contenido, si se ha calculado */
+  private final String hashMerkle;
+
+  public StagedFile(Path path, String hash, long size) {
+    this(path, hash, size, null, 0, null);
+  }
+
+  /**
+   * Devuelve el mismo fichero con la raíz del árbol de hashes indicada.
+   * 
+   * @param hashMerkle raíz del árbol de hashes.
+   * @return el {@link StagedFile}.
+   */
+  public StagedFile withHashMerkle(String hashMerkle) {
+    return new StagedFile(path, hash, size, encoding, hashTime, hashMerkle);
+  }
+}
@@ -3,8 +3,24 @@ package org.crue.hercules.sgi.sgdoc.utils;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
 
 import org.crue.hercules.sgi.sgdoc.model.Documento;
 import org.springframework.core.io.ClassPathResource;
@@ -14,8 +30,20 @@ import org.springframework.core.io.Resource;
 public class StoreUtils {
 
   public static final String SAMPLE_DATA_PREFIX = "sample-";
+  /** Directorio (relativo al store) donde se preparan los ficheros entrantes */
+  public static final String TMP_DIRECTORY = ".tmp";
+  /** Directorio (relativo al store) de las subidas por fragmentos */
+  public static final String UPLOADS_DIRECTORY = ".uploads";
+  /** Directorio (relativo al store) de los contenidos deduplicados */
+  public static final String BLOB_DIRECTORY = "blobs";
+  /** Directorio (relativo al store) de la organización por hash del documentoRef */
+  public static final String SHARD_DIRECTORY = "shards";
+  /** Codificación de los ficheros comprimidos en el store */
+  public static final String GZIP_ENCODING = "gzip";
   private static final String PATTERN = "YYYY" + File.separator + "MM" + File.separator + "dd";
   private static DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(PATTERN);
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
   private StoreUtils() {
     // To prevent instances
@@ -37,33 +65,273 @@ public class StoreUtils {
     }
   }
 
-  public static String getFileChecksum(MessageDigest digest, File file) throws IOException {
-    // Get file input stream for reading the file content
-    FileInputStream fis = new FileInputStream(file);
+  /**
+   * Devuelve la ruta del fichero del {@link Documento} en la organización por
+   * fecha de creación (<code>YYYY/MM/dd/documentoRef</code>).
+   *
+   * @param storePath ruta del store.
+   * @param documento el {@link Documento}.
+   * @return ruta del fichero.
+   */
+  public static Path getDatePath(String storePath, Documento documento) {
+    return Paths.get(getAbsolutePath(storePath, documento));
+  }
 
-    // Create byte array to read data in chunks
-    byte[] byteArray = new byte[1024];
-    int bytesCount = 0;
+  /**
+   * Devuelve el directorio de la organización por fecha de creación con los
+   * ficheros creados el día indicado.
+   *
+   * @param storePath ruta del store.
+   * @param fecha     día de creación.
+   * @return ruta del directorio.
+   */
+  public static Path getDateDirectory(String storePath, LocalDate fecha) {
+    return Paths.get(storePath, FORMATTER.format(fecha));
+  }
 
-    // Read file data and update in message digest
-    while ((bytesCount = fis.read(byteArray)) != -1) {
-      digest.update(byteArray, 0, bytesCount);
+  /**
+   * Devuelve la ruta del fichero del {@link Documento} en la organización por
+   * hash del documentoRef. Los ficheros se reparten en dos niveles de 256
+   * directorios según los primeros caracteres del hash, por lo que la ruta no
+   * depende de la fecha de creación.
+   *
+   * @param storePath    ruta del store.
+   * @param documentoRef referencia del {@link Documento}.
+   * @return ruta del fichero.
+   */
+  public static Path getShardedPath(String storePath, String documentoRef) {
+    String hash;
+    try {
+      hash = toHex(MessageDigest.getInstance("SHA-256").digest(documentoRef.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
     }
+    return Paths.get(storePath, SHARD_DIRECTORY, hash.substring(0, 2), hash.substring(2, 4), documentoRef);
+  }
 
-    // close the stream; We don't need it now.
-    fis.close();
+  /**
+   * Devuelve la ruta del directorio de preparación del store.
+   *
+   * @param storePath ruta del store.
+   * @return ruta del directorio de preparación.
+   */
+  public static Path getTmpPath(String storePath) {
+    return Paths.get(storePath, TMP_DIRECTORY);
+  }
 
-    // Get the hash's bytes
-    byte[] bytes = digest.digest();
+  /**
+   * Devuelve la ruta del directorio de una subida por fragmentos.
+   *
+   * @param storePath ruta del store.
+   * @param subidaId  identificador de la subida.
+   * @return ruta del directorio de la subida.
+   */
+  public static Path getUploadPath(String storePath, String subidaId) {
+    return Paths.get(storePath, UPLOADS_DIRECTORY, subidaId);
+  }
 
-    // This bytes[] has bytes in decimal format;
-    // Convert it to hexadecimal format
-    StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < bytes.length; i++) {
-      sb.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
+  /**
+   * Devuelve la ruta del contenido deduplicado con el hash indicado. Los
+   * contenidos se reparten en dos niveles de directorios según los primeros
+   * caracteres del hash.
+   *
+   * @param storePath ruta del store.
+   * @param hash      hash (hexadecimal) del contenido.
+   * @return ruta del contenido.
+   */
+  public static Path getBlobPath(String storePath, String hash) {
+    return Paths.get(storePath, BLOB_DIRECTORY, hash.substring(0, 2), hash.substring(2, 4), hash);
+  }
+
+  /**
+   * Escribe el contenido en un fichero temporal del directorio de preparación
+   * calculando el hash a la vez que se escriben los bytes, de forma que el
+   * contenido se lee una única vez.
+   *
+   * @param content      contenido a escribir.
+   * @param tmpDirectory directorio de preparación.
+   * @param digest       algoritmo de hash a aplicar (<code>null</code> para no
+   *                     calcular el hash).
+   * @return el {@link StagedFile} escrito.
+   * @throws IOException si no se puede escribir el fichero.
+   */
+  public static StagedFile stage(InputStream content, Path tmpDirectory, MessageDigest digest) throws IOException {
+    return stage(content, tmpDirectory, digest, false);
+  }
+
+  /**
+   * Escribe el contenido en un fichero temporal del directorio de preparación,
+   * comprimido con gzip si se indica, calculando el hash del contenido sin
+   * comprimir a la vez que se escriben los bytes.
+   *
+   * @param content      contenido a escribir.
+   * @param tmpDirectory directorio de preparación.
+   * @param digest       algoritmo de hash a aplicar (<code>null</code> para no
+   *                     calcular el hash).
+   * @param gzip         <code>true</code> para comprimir el fichero.
+   * @return el {@link StagedFile} escrito.
+   * @throws IOException si no se puede escribir el fichero.
+   */
+  public static StagedFile stage(InputStream content, Path tmpDirectory, MessageDigest digest, boolean gzip)
+      throws IOException {
+    Files.createDirectories(tmpDirectory);
+    Path tmp = Files.createTempFile(tmpDirectory, "upload-", ".tmp");
+    long size = 0;
+    long hashTime = 0;
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+        OutputStream out = gzip ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)
+            : Channels.newOutputStream(channel)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int bytesCount;
+      while ((bytesCount = content.read(buffer)) != -1) {
+        if (digest != null) {
+          long start = System.nanoTime();
+          digest.update(buffer, 0, bytesCount);
+          hashTime += System.nanoTime() - start;
+        }
+        out.write(buffer, 0, bytesCount);
+        size += bytesCount;
+      }
+      if (out instanceof GZIPOutputStream) {
+        ((GZIPOutputStream) out).finish();
+      }
+      // The file must be on disk before a rename publishes it, otherwise a crash
+      // may leave an empty or partial file that the database says is committed
+      channel.force(true);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    return new StagedFile(tmp, digest != null ? toHex(digest.digest()) : null, size, gzip ? GZIP_ENCODING : null,
+        hashTime, null);
+  }
+
+  /**
+   * Mueve de forma atómica el fichero preparado a su ubicación definitiva. Nunca
+   * sobrescribe un fichero existente.
+   *
+   * @param staged fichero preparado.
+   * @param target ubicación definitiva.
+   * @throws FileAlreadyExistsException si ya existe un fichero en la ubicación
+   *                                    definitiva.
+   * @throws IOException                si no se puede mover el fichero.
+   */
+  public static void commit(StagedFile staged, Path target) throws IOException {
+    move(staged.getPath(), target);
+  }
+
+  /**
+   * Mueve de forma atómica un fichero del store a otra ubicación, creando los
+   * directorios necesarios. Nunca sobrescribe un fichero existente.
+   * 
+   * El fichero se publica con un enlace duro, que a diferencia de un rename
+   * falla si el destino ya existe, y después se elimina el origen. Sólo si no se
+   * puede crear el enlace (sistemas de ficheros sin enlaces duros, como algunos
+   * montajes SMB, NFS o FUSE, u origen y destino en montajes distintos) se
+   * comprueba antes si el destino existe (sin garantías frente a escrituras
+   * simultáneas) y se renombra.
+   *
+   * @param source ubicación actual.
+   * @param target nueva ubicación.
+   * @throws FileAlreadyExistsException si ya existe un fichero en la nueva
+   *                                    ubicación.
+   * @throws IOException                si no se puede mover el fichero.
+   */
+  public static void move(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    if (link(target, source)) {
+      Files.delete(source);
+    } else {
+      if (Files.exists(target)) {
+        throw new FileAlreadyExistsException(target.toString());
+      }
+      try {
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(source, target);
+      }
+    }
+    forceDirectory(target.getParent());
+  }
+
+  /**
+   * Crea un enlace duro.
+   *
+   * @param link     el enlace a crear.
+   * @param existing el fichero existente.
+   * @return <code>false</code> si el sistema de ficheros no permite crear el
+   *         enlace.
+   * @throws FileAlreadyExistsException si ya existe el enlace.
+   * @throws IOException                si no se puede crear el enlace por otro
+   *                                    motivo.
+   */
+  public static boolean link(Path link, Path existing) throws IOException {
+    try {
+      Files.createLink(link, existing);
+      return true;
+    } catch (FileAlreadyExistsException e) {
+      throw e;
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      // EPERM, EXDEV, ENOTSUP...: fall back to what the caller does without links
+      return false;
+    }
+  }
+
+  /**
+   * Escribe a disco las entradas del directorio (la creación de un fichero no es
+   * duradera hasta entonces). No todos los sistemas operativos permiten abrir un
+   * directorio, en cuyo caso no se hace nada.
+   */
+  private static void forceDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // Not supported (Windows): rely on the file system journal
+    }
+  }
+
+  /**
+   * Elimina el fichero preparado si todavía existe.
+   *
+   * @param staged fichero preparado.
+   */
+  public static void discard(StagedFile staged) {
+    try {
+      Files.deleteIfExists(staged.getPath());
+    } catch (IOException e) {
+      // Nothing to do, the file will be left in the tmp directory
+    }
+  }
+
+  public static String getFileChecksum(MessageDigest digest, File file) throws IOException {
+    // Get file input stream for reading the file content
+    try (FileInputStream fis = new FileInputStream(file)) {
+      // Create byte array to read data in chunks
+      byte[] byteArray = new byte[BUFFER_SIZE];
+      int bytesCount = 0;
+
+      // Read file data and update in message digest
+      while ((bytesCount = fis.read(byteArray)) != -1) {
+        digest.update(byteArray, 0, bytesCount);
+      }
     }
 
     // return complete hash
-    return sb.toString();
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Convierte los bytes de un hash a su representación hexadecimal.
+   *
+   * @param bytes bytes del hash.
+   * @return representación hexadecimal.
+   */
+  public static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+    }
+    return new String(hex);
   }
 }
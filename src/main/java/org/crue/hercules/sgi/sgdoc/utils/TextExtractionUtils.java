@@ -0,0 +1,112 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+public class TextExtractionUtils {
+
+  private static final String PDF_TYPE = "application/pdf";
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private TextExtractionUtils() {
+    // To prevent instances
+  }
+
+  /**
+   * Indica si se puede extraer el texto de los ficheros del tipo indicado.
+   *
+   * @param tipo tipo (MIME) del fichero.
+   * @return <code>true</code> si se puede extraer el texto.
+   */
+  public static boolean isSupported(String tipo) {
+    return isPdf(tipo) || isText(tipo);
+  }
+
+  /**
+   * Extrae el texto del contenido de un fichero.
+   *
+   * @param content   contenido del fichero.
+   * @param tipo      tipo (MIME) del fichero.
+   * @param maxLength número máximo de caracteres a extraer.
+   * @return el texto o <code>null</code> si el tipo no está soportado.
+   * @throws IOException si no se puede leer el contenido.
+   */
+  public static String extract(InputStream content, String tipo, int maxLength) throws IOException {
+    LimitedWriter writer = new LimitedWriter(maxLength);
+    if (isPdf(tipo)) {
+      // Scratch data goes to temporary files, so large PDFs do not exhaust the heap
+      try (PDDocument document = PDDocument.load(content, MemoryUsageSetting.setupTempFileOnly())) {
+        new PDFTextStripper().writeText(document, writer);
+      }
+    } else if (isText(tipo)) {
+      Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+      char[] buffer = new char[BUFFER_SIZE];
+      int charsCount;
+      while (!writer.isFull() && (charsCount = reader.read(buffer)) != -1) {
+        writer.write(buffer, 0, charsCount);
+      }
+    } else {
+      return null;
+    }
+    return writer.toString();
+  }
+
+  private static boolean isPdf(String tipo) {
+    return tipo != null && tipo.toLowerCase(Locale.ROOT).startsWith(PDF_TYPE);
+  }
+
+  private static boolean isText(String tipo) {
+    if (tipo == null) {
+      return false;
+    }
+    String type = tipo.toLowerCase(Locale.ROOT);
+    return type.startsWith("text/") || type.startsWith("application/json") || type.startsWith("application/xml")
+        || type.contains("+xml") || type.contains("+json") || type.startsWith("application/csv");
+  }
+
+  /**
+   * Writer que descarta los caracteres a partir del límite indicado.
+   */
+  private static class LimitedWriter extends Writer {
+
+    private final StringBuilder builder = new StringBuilder();
+    private final int maxLength;
+
+    LimitedWriter(int maxLength) {
+      this.maxLength = maxLength;
+    }
+
+    boolean isFull() {
+      return builder.length() >= maxLength;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      builder.append(cbuf, off, Math.min(len, maxLength - builder.length()));
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to flush
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public String toString() {
+      return builder.toString();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.core.io.Resource;
+
+public class ZipUtils {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Tipos de contenido que ya están comprimidos */
+  private static final Set<String> COMPRESSED_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "application/pdf", "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+      "application/x-rar-compressed", "application/vnd.rar", "application/x-bzip2", "application/java-archive",
+      "application/epub+zip")));
+  private static final String[] COMPRESSED_TYPE_PREFIXES = { "image/", "audio/", "video/",
+      "application/vnd.openxmlformats-officedocument.", "application/vnd.oasis.opendocument." };
+
+  private ZipUtils() {
+    // To prevent instances
+  }
+
+  /**
+   * Indica si el tipo de contenido ya está comprimido, de forma que volver a
+   * comprimirlo no reduce su tamaño.
+   * 
+   * @param tipo tipo de contenido.
+   * @return <code>true</code> si el contenido ya está comprimido.
+   */
+  public static boolean isCompressed(String tipo) {
+    if (tipo == null) {
+      return false;
+    }
+    String type = tipo.toLowerCase();
+    if (type.equals("image/svg+xml") || type.equals("image/bmp")) {
+      return false;
+    }
+    if (COMPRESSED_TYPES.contains(type)) {
+      return true;
+    }
+    for (String prefix : COMPRESSED_TYPE_PREFIXES) {
+      if (type.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Añade una entrada al ZIP con el contenido del {@link Resource}.
+   * 
+   * Las entradas son siempre DEFLATED: las que no se comprimen se escriben con
+   * nivel {@link Deflater#NO_COMPRESSION}, de forma que el CRC y el tamaño se
+   * calculan a la vez que se escribe el contenido y el {@link Resource} se lee
+   * una única vez.
+   * 
+   * @param zip      el ZIP.
+   * @param name     nombre de la entrada.
+   * @param resource contenido de la entrada.
+   * @param store    <code>true</code> para guardar el contenido sin comprimir,
+   *                 <code>false</code> para comprimirlo.
+   * @throws IOException si no se puede leer el contenido o escribir el ZIP.
+   */
+  public static void writeEntry(ZipOutputStream zip, String name, Resource resource, boolean store)
+      throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.DEFLATED);
+    zip.setLevel(store ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+
+    zip.putNextEntry(entry);
+    try (InputStream in = resource.getInputStream()) {
+      copy(in, zip, buffer);
+    }
+    zip.closeEntry();
+  }
+
+  /**
+   * Devuelve el nombre del fichero sin directorios, de forma que la entrada no
+   * se pueda extraer fuera del directorio de destino (zip slip): se eliminan
+   * las rutas (<code>/</code> y <code>\</code>), las unidades
+   * (<code>:</code>) y los <code>..</code>.
+   * 
+   * @param name        nombre del fichero.
+   * @param defaultName nombre a utilizar si no queda ninguno.
+   * @return nombre de entrada seguro.
+   */
+  public static String baseName(String name, String defaultName) {
+    if (name == null) {
+      return defaultName;
+    }
+    String base = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+    base = base.replace("..", "").replace(':', '_').trim();
+    return base.isEmpty() ? defaultName : base;
+  }
+
+  /**
+   * Devuelve un nombre de entrada que no esté en uso, añadiendo un sufijo
+   * numérico antes de la extensión si es necesario.
+   * 
+   * @param name  nombre deseado.
+   * @param names nombres en uso (se añade el devuelto).
+   * @return nombre de entrada único.
+   */
+  public static String uniqueName(String name, Set<String> names) {
+    String candidate = name;
+    int dot = name.lastIndexOf('.');
+    String base = dot > 0 ? name.substring(0, dot) : name;
+    String extension = dot > 0 ? name.substring(dot) : "";
+    for (int i = 1; !names.add(candidate); i++) {
+      candidate = base + " (" + i + ")" + extension;
+    }
+    return candidate;
+  }
+
+  private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+    int bytesCount;
+    while ((bytesCount = in.read(buffer)) != -1) {
+      out.write(buffer, 0, bytesCount);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package org.crue.hercules.sgi.sgdoc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * BaseStoreTest
+ *
+ * Base de los tests que escriben en el store: cada clase de test usa un
+ * directorio temporal propio como <code>sgi.store.path</code>, que se elimina
+ * al terminar. El directorio se lee al arrancar el contexto, por lo que cada
+ * clase debe tener un contexto propio (por ejemplo, su propia base de datos
+ * H2).
+ */
+public abstract class BaseStoreTest {
+
+  /** Directorio del store de la clase de test en ejecución */
+  protected static Path store;
+
+  @BeforeAll
+  static void createStore() throws IOException {
+    store = Files.createTempDirectory("sgdoc-test-");
+  }
+
+  @DynamicPropertySource
+  static void storeProperties(DynamicPropertyRegistry registry) {
+    // Resolved when the context starts, after createStore
+    registry.add("sgi.store.path", () -> store.toString());
+  }
+
+  @AfterAll
+  static void deleteStore() throws IOException {
+    FileSystemUtils.deleteRecursively(store);
+  }
+
+  /**
+   * @param size número de bytes.
+   * @return contenido aleatorio del tamaño indicado.
+   */
+  protected static byte[] randomContent(int size) {
+    byte[] content = new byte[size];
+    new Random().nextBytes(content);
+    return content;
+  }
+}
@@ -0,0 +1,157 @@
+package org.crue.hercules.sgi.sgdoc.controller;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.assertj.core.api.Assertions;
+import org.crue.hercules.sgi.sgdoc.BaseStoreTest;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.service.DocumentoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+/**
+ * DocumentoControllerTest
+ *
+ * Peticiones condicionales y de rangos de los metadatos y los ficheros.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:sgdoccontroller;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000" })
+@AutoConfigureMockMvc
+@WithMockUser
+class DocumentoControllerTest extends BaseStoreTest {
+
+  private static final String ARCHIVO_PATH = "/documentos/{id}/archivo";
+  private static final int TAMANO = 1000;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private DocumentoService documentoService;
+
+  @Test
+  void findDocumentoArchivo_WithMatchingIfNoneMatch_ReturnsNotModified() throws Exception {
+    // given: a documento and the ETag of its file
+    Documento documento = create(randomContent(TAMANO));
+    String eTag = "\"" + documento.getHash() + "\"";
+
+    // when: the file is requested with that ETag
+    // then: it is not sent again
+    mockMvc
+        .perform(MockMvcRequestBuilders.get(ARCHIVO_PATH, documento.getDocumentoRef())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+        .andExpect(MockMvcResultMatchers.status().isNotModified())
+        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, eTag))
+        .andExpect(MockMvcResultMatchers.request().asyncNotStarted());
+  }
+
+  @Test
+  void findById_WithMetadataETag_ReturnsNotModified() throws Exception {
+    // given: a documento
+    Documento documento = create(randomContent(TAMANO));
+
+    // when: its metadata are requested
+    String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/documentos/{id}", documento.getDocumentoRef()))
+        .andExpect(MockMvcResultMatchers.status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    // then: their ETag is weak and not the one of the file
+    Assertions.assertThat(eTag).startsWith("W/").isNotEqualTo("\"" + documento.getHash() + "\"");
+
+    // and: it can be used for a conditional request
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/documentos/{id}", documento.getDocumentoRef())
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+        .andExpect(MockMvcResultMatchers.status().isNotModified());
+  }
+
+  @Test
+  void findDocumentoArchivoRango_WithRange_ReturnsPartialContent() throws Exception {
+    // given: a documento
+    byte[] content = randomContent(TAMANO);
+    Documento documento = create(content);
+
+    // when: a range of its file is requested
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get(ARCHIVO_PATH, documento.getDocumentoRef())
+            .header(HttpHeaders.RANGE, "bytes=100-199"))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+
+    // then: only that range is sent, from the download executor
+    mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(MockMvcResultMatchers.status().isPartialContent())
+        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 100-199/" + TAMANO))
+        .andExpect(MockMvcResultMatchers.content().bytes(Arrays.copyOfRange(content, 100, 200)));
+  }
+
+  @Test
+  void findDocumentoArchivoRango_WithMatchingIfRange_ReturnsPartialContent() throws Exception {
+    // given: a documento and the ETag of its file
+    byte[] content = randomContent(TAMANO);
+    Documento documento = create(content);
+
+    // when: a range is requested if the file has not changed
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get(ARCHIVO_PATH, documento.getDocumentoRef())
+            .header(HttpHeaders.RANGE, "bytes=-10").header(HttpHeaders.IF_RANGE, "\"" + documento.getHash() + "\""))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+
+    // then: the range is sent
+    mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(MockMvcResultMatchers.status().isPartialContent())
+        .andExpect(MockMvcResultMatchers.content().bytes(Arrays.copyOfRange(content, TAMANO - 10, TAMANO)));
+  }
+
+  @Test
+  void findDocumentoArchivoRango_WithStaleIfRange_ReturnsFullContent() throws Exception {
+    // given: a documento and an ETag of another version
+    byte[] content = randomContent(TAMANO);
+    Documento documento = create(content);
+
+    // when: a range is requested if the file has not changed
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get(ARCHIVO_PATH, documento.getDocumentoRef())
+            .header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, "\"otra-version\""))
+        .andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+
+    // then: the full file is sent
+    mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+        .andExpect(MockMvcResultMatchers.content().bytes(content));
+  }
+
+  @Test
+  void findDocumentoArchivoRango_WithUnsatisfiableRange_ReturnsRangeNotSatisfiable() throws Exception {
+    // given: a documento
+    Documento documento = create(randomContent(TAMANO));
+
+    // when: a range after the end of the file is requested
+    // then: it is rejected with the length of the file
+    mockMvc
+        .perform(MockMvcRequestBuilders.get(ARCHIVO_PATH, documento.getDocumentoRef())
+            .header(HttpHeaders.RANGE, "bytes=" + TAMANO + "-"))
+        .andExpect(MockMvcResultMatchers.status().is(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()))
+        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + TAMANO));
+  }
+
+  private Documento create(byte[] content) {
+    Documento documento = new Documento();
+    documento.setNombre("documento.bin");
+    documento.setTipo("application/octet-stream");
+    documento.setAutorRef("user");
+    documento.setFechaCreacion(LocalDateTime.now());
+    documento.setVersion(1);
+    return documentoService.create(documento, new ByteArrayInputStream(content));
+  }
+}
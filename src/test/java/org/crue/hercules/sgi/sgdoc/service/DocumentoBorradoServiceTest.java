@@ -0,0 +1,130 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.crue.hercules.sgi.sgdoc.BaseStoreTest;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoBorradoRepository;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * DocumentoBorradoServiceTest
+ * 
+ * Borrado en segundo plano de los ficheros de los documentos eliminados.
+ */
+@SpringBootTest(properties = { "sgi.delete.deferred=true", "sgi.delete.interval=PT1H", "sgi.delete.max-ids=5",
+    "spring.datasource.url=jdbc:h2:mem:sgdocborrado;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000" })
+class DocumentoBorradoServiceTest extends BaseStoreTest {
+
+  @Autowired
+  private DocumentoService documentoService;
+
+  @Autowired
+  private DocumentoBorradoService documentoBorradoService;
+
+  @Autowired
+  private StoreService storeService;
+
+  @Autowired
+  private DocumentoRepository documentoRepository;
+
+  @Autowired
+  private DocumentoBorradoRepository documentoBorradoRepository;
+
+  @Test
+  void delete_WithDeferredDelete_QueuesFile() throws Exception {
+    // given: a documento
+    Documento documento = create();
+    Path file = getFile(documento);
+
+    // when: it is deleted
+    documentoService.delete(documento.getDocumentoRef());
+
+    // then: the row is gone but the file waits in the queue
+    Assertions.assertThat(documentoRepository.findById(documento.getDocumentoRef())).isEmpty();
+    Assertions.assertThat(documentoBorradoRepository.findById(documento.getDocumentoRef())).isPresent();
+    Assertions.assertThat(file).exists();
+
+    // and: the queue deletes the file
+    documentoBorradoService.deletePending();
+    Assertions.assertThat(documentoBorradoRepository.findById(documento.getDocumentoRef())).isEmpty();
+    Assertions.assertThat(file).doesNotExist();
+  }
+
+  @Test
+  void deleteAll_WithUnknownAndRepeatedIds_QueuesExistingOnce() throws Exception {
+    // given: two documentos and a list with unknown and repeated ids
+    Documento first = create();
+    Documento second = create();
+    List<String> ids = Arrays.asList(first.getDocumentoRef(), "unknown", second.getDocumentoRef(),
+        first.getDocumentoRef());
+
+    // when: they are deleted
+    List<String> deleted = documentoService.deleteAll(ids);
+
+    // then: only the existing ones are deleted and queued
+    Assertions.assertThat(deleted).containsExactly(first.getDocumentoRef(), second.getDocumentoRef());
+    Assertions.assertThat(documentoRepository.findAllById(deleted)).isEmpty();
+    Assertions.assertThat(documentoBorradoRepository.findAllById(deleted)).hasSize(2);
+
+    // and: the queue deletes their files
+    documentoBorradoService.deletePending();
+    Assertions.assertThat(documentoBorradoRepository.findAllById(deleted)).isEmpty();
+    Assertions.assertThat(getFile(first)).doesNotExist();
+    Assertions.assertThat(getFile(second)).doesNotExist();
+  }
+
+  @Test
+  void deletePending_WithMissingFile_DropsEntry() throws Exception {
+    // given: a queued documento whose file is already gone
+    Documento documento = create();
+    documentoService.deleteAll(Collections.singletonList(documento.getDocumentoRef()));
+    Files.delete(getFile(documento));
+
+    // when: the queue is processed
+    documentoBorradoService.deletePending();
+
+    // then: the entry is removed
+    Assertions.assertThat(documentoBorradoRepository.findById(documento.getDocumentoRef())).isEmpty();
+  }
+
+  @Test
+  void deleteAll_WithTooManyIds_ThrowsIllegalArgumentException() {
+    // given: more ids than sgi.delete.max-ids
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      ids.add("documento-" + i);
+    }
+
+    // when: they are deleted, then: the request is rejected
+    Assertions.assertThatThrownBy(() -> documentoService.deleteAll(ids))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private Documento create() {
+    byte[] content = randomContent(1024);
+    Documento documento = new Documento();
+    documento.setNombre("documento.bin");
+    documento.setTipo("application/octet-stream");
+    documento.setAutorRef("user");
+    documento.setFechaCreacion(LocalDateTime.now());
+    documento.setVersion(1);
+    return documentoService.create(documento, new ByteArrayInputStream(content));
+  }
+
+  private Path getFile(Documento documento) throws IOException {
+    return storeService.getResource(documento).getFile().toPath();
+  }
+}
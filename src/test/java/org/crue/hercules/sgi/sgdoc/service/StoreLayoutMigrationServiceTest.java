@@ -0,0 +1,117 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import org.assertj.core.api.Assertions;
+import org.crue.hercules.sgi.sgdoc.BaseStoreTest;
+import org.crue.hercules.sgi.sgdoc.dto.MigracionEstado;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * StoreLayoutMigrationServiceTest
+ *
+ * Migración de los ficheros del store de la organización por fechas a la
+ * organización por shards.
+ */
+@SpringBootTest(properties = { "sgi.store.layout=sharded",
+    "spring.datasource.url=jdbc:h2:mem:sgdoclayout;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000" })
+class StoreLayoutMigrationServiceTest extends BaseStoreTest {
+
+  private static final int TAMANO = 1024;
+  /** Espera máxima a que termine la migración en segundo plano */
+  private static final long MIGRATION_TIMEOUT_MILLIS = 10000;
+
+  @Autowired
+  private StoreLayoutMigrationService migrationService;
+
+  @Autowired
+  private DocumentoService documentoService;
+
+  @Autowired
+  private StoreService storeService;
+
+  @Test
+  void start_WithDateLayoutFiles_MovesThemToShards() throws Exception {
+    // given: a documento whose file is still in the date layout
+    byte[] content = randomContent(TAMANO);
+    Documento documento = create(content);
+    Path sharded = StoreUtils.getShardedPath(store.toString(), documento.getDocumentoRef());
+    Path date = StoreUtils.getDatePath(store.toString(), documento);
+    Files.createDirectories(date.getParent());
+    Files.move(sharded, date);
+
+    // and: it is found while it waits to be migrated
+    assertContent(documento, content);
+
+    // when: the migration runs
+    MigracionEstado estado = migrate();
+
+    // then: the file is moved to its shard and is still found
+    Assertions.assertThat(estado.getMovidos()).isEqualTo(1);
+    Assertions.assertThat(estado.getErrores()).isZero();
+    Assertions.assertThat(sharded).hasBinaryContent(content);
+    Assertions.assertThat(date).doesNotExist();
+    Assertions.assertThat(date.getParent()).doesNotExist();
+    assertContent(documento, content);
+  }
+
+  @Test
+  void start_WithFileInBothLayouts_KeepsShardedFile() throws Exception {
+    // given: a documento whose file is in both layouts (e.g. restored from a
+    // backup)
+    byte[] content = randomContent(TAMANO);
+    Documento documento = create(content);
+    Path sharded = StoreUtils.getShardedPath(store.toString(), documento.getDocumentoRef());
+    Path date = StoreUtils.getDatePath(store.toString(), documento);
+    Files.createDirectories(date.getParent());
+    Files.copy(sharded, date);
+
+    // when: the migration runs
+    MigracionEstado estado = migrate();
+
+    // then: the file in the shard is kept and the other one is skipped
+    try {
+      Assertions.assertThat(estado.getOmitidos()).isEqualTo(1);
+      Assertions.assertThat(sharded).hasBinaryContent(content);
+      Assertions.assertThat(date).exists();
+      assertContent(documento, content);
+    } finally {
+      Files.deleteIfExists(date);
+    }
+  }
+
+  private MigracionEstado migrate() throws InterruptedException {
+    migrationService.start();
+    long deadline = System.currentTimeMillis() + MIGRATION_TIMEOUT_MILLIS;
+    while (migrationService.getEstado().isEnCurso() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    MigracionEstado estado = migrationService.getEstado();
+    Assertions.assertThat(estado.isEnCurso()).isFalse();
+    return estado;
+  }
+
+  private void assertContent(Documento documento, byte[] content) throws Exception {
+    try (InputStream in = storeService.getResource(documento).getInputStream()) {
+      Assertions.assertThat(in).hasSameContentAs(new ByteArrayInputStream(content));
+    }
+  }
+
+  private Documento create(byte[] content) {
+    Documento documento = new Documento();
+    documento.setNombre("documento.bin");
+    documento.setTipo("application/octet-stream");
+    documento.setAutorRef("user");
+    documento.setFechaCreacion(LocalDateTime.now());
+    documento.setVersion(1);
+    return documentoService.create(documento, new ByteArrayInputStream(content));
+  }
+}
@@ -0,0 +1,86 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.assertj.core.api.Assertions;
+import org.crue.hercules.sgi.sgdoc.BaseStoreTest;
+import org.crue.hercules.sgi.sgdoc.dto.ReconciliacionEstado;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * StoreReconciliationServiceTest
+ *
+ * Conciliación de los ficheros del store con los documentos y eliminación de
+ * los ficheros huérfanos.
+ */
+@SpringBootTest(properties = { "sgi.reconcile.reclaim=true",
+    "spring.datasource.url=jdbc:h2:mem:sgdocreconcile;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000" })
+class StoreReconciliationServiceTest extends BaseStoreTest {
+
+  private static final int TAMANO = 1024;
+  /** Espera máxima a que termine la conciliación en segundo plano */
+  private static final long RECONCILE_TIMEOUT_MILLIS = 10000;
+
+  @Autowired
+  private StoreReconciliationService reconciliationService;
+
+  @Autowired
+  private DocumentoService documentoService;
+
+  @Test
+  void start_WithReclaim_DeletesOldOrphanFiles() throws Exception {
+    // given: a documento and two files without a documento in its directory,
+    // one older than the grace period and one just written
+    Documento documento = create(randomContent(TAMANO));
+    LocalDate dia = documento.getFechaCreacion().toLocalDate();
+    Path directory = StoreUtils.getDateDirectory(store.toString(), dia);
+    Path documentoFile = StoreUtils.getDatePath(store.toString(), documento);
+    Path antiguo = Files.write(directory.resolve("huerfano-antiguo"), randomContent(TAMANO));
+    Files.setLastModifiedTime(antiguo, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+    Path reciente = Files.write(directory.resolve("huerfano-reciente"), randomContent(TAMANO));
+
+    // when: the day is reconciled
+    ReconciliacionEstado estado = reconcile(dia);
+
+    // then: only the old orphan is deleted
+    Assertions.assertThat(estado.getErrores()).isZero();
+    Assertions.assertThat(estado.getHuerfanos()).isEqualTo(1);
+    Assertions.assertThat(estado.getEliminados()).isEqualTo(1);
+    Assertions.assertThat(estado.getSinFichero()).isZero();
+    Assertions.assertThat(antiguo).doesNotExist();
+    Assertions.assertThat(reciente).exists();
+    Assertions.assertThat(documentoFile).exists();
+  }
+
+  private ReconciliacionEstado reconcile(LocalDate dia) throws InterruptedException {
+    reconciliationService.start(dia, dia);
+    long deadline = System.currentTimeMillis() + RECONCILE_TIMEOUT_MILLIS;
+    while (reconciliationService.getEstado().isEnCurso() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    ReconciliacionEstado estado = reconciliationService.getEstado();
+    Assertions.assertThat(estado.isEnCurso()).isFalse();
+    return estado;
+  }
+
+  private Documento create(byte[] content) {
+    Documento documento = new Documento();
+    documento.setNombre("documento.bin");
+    documento.setTipo("application/octet-stream");
+    documento.setAutorRef("user");
+    documento.setFechaCreacion(LocalDateTime.now());
+    documento.setVersion(1);
+    return documentoService.create(documento, new ByteArrayInputStream(content));
+  }
+}
@@ -0,0 +1,153 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.crue.hercules.sgi.sgdoc.BaseStoreTest;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.DocumentoContenido;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoContenidoRepository;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * StoreServiceDeduplicatedTest
+ * 
+ * Recuento de referencias de los contenidos deduplicados.
+ */
+@SpringBootTest(properties = { "sgi.store.mode=deduplicated",
+    "spring.datasource.url=jdbc:h2:mem:sgdocdedup;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000" })
+class StoreServiceDeduplicatedTest extends BaseStoreTest {
+
+  private static final int TAMANO = 4096;
+  /** Tantas como conexiones en el pool (por defecto): cada subida usa una */
+  private static final int CONCURRENT_UPLOADS = 10;
+  /** Espera máxima a la eliminación en segundo plano de un contenido */
+  private static final long PURGE_TIMEOUT_MILLIS = 10000;
+
+  @Autowired
+  private DocumentoService documentoService;
+
+  @Autowired
+  private StoreService storeService;
+
+  @Autowired
+  private DocumentoContenidoRepository contenidoRepository;
+
+  @Test
+  void create_WithSameContent_SharesOneBlob() throws Exception {
+    // given: two uploads of the same content
+    byte[] content = randomContent(TAMANO);
+
+    // when: the documentos are created
+    Documento first = documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+    Documento second = documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+
+    // then: both use the same blob, referenced twice
+    Path blob = StoreUtils.getBlobPath(store.toString(), first.getHash());
+    Assertions.assertThat(second.getHash()).isEqualTo(first.getHash());
+    Assertions.assertThat(first.getDeduplicado()).isTrue();
+    Assertions.assertThat(second.getDeduplicado()).isTrue();
+    Assertions.assertThat(getReferencias(first.getHash())).isEqualTo(2);
+    Assertions.assertThat(blob).exists().hasBinaryContent(content);
+    Assertions.assertThat(storeService.getResource(first).getFile().toPath()).isEqualTo(blob);
+    Assertions.assertThat(storeService.getResource(second).getFile().toPath()).isEqualTo(blob);
+  }
+
+  @Test
+  void delete_WithOtherReferences_KeepsBlob() throws Exception {
+    // given: two documentos with the same content
+    byte[] content = randomContent(TAMANO);
+    Documento first = documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+    Documento second = documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+
+    // when: one of them is deleted
+    documentoService.delete(first.getDocumentoRef());
+
+    // then: the blob stays for the other one
+    Assertions.assertThat(getReferencias(second.getHash())).isEqualTo(1);
+    Assertions.assertThat(StoreUtils.getBlobPath(store.toString(), second.getHash())).exists()
+        .hasBinaryContent(content);
+  }
+
+  @Test
+  void delete_WithLastReference_DeletesBlobAndContenido() throws Exception {
+    // given: two documentos with the same content
+    byte[] content = randomContent(TAMANO);
+    Documento first = documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+    Documento second = documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+
+    // when: both are deleted
+    documentoService.delete(first.getDocumentoRef());
+    documentoService.delete(second.getDocumentoRef());
+
+    // then: the blob and its row are purged after the commit
+    awaitPurge(first.getHash());
+    Assertions.assertThat(contenidoRepository.findById(first.getHash())).isEmpty();
+    Assertions.assertThat(StoreUtils.getBlobPath(store.toString(), first.getHash())).doesNotExist();
+  }
+
+  @Test
+  void create_WithConcurrentFirstUploads_CountsEveryReference() throws Exception {
+    // given: several uploads of a new content starting at the same time
+    byte[] content = randomContent(TAMANO);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_UPLOADS);
+    List<Future<Documento>> uploads = new ArrayList<>();
+    try {
+      for (int i = 0; i < CONCURRENT_UPLOADS; i++) {
+        uploads.add(executor.submit(() -> {
+          start.await();
+          return documentoService.create(newDocumento(), new ByteArrayInputStream(content));
+        }));
+      }
+
+      // when: they insert the contenido row concurrently
+      start.countDown();
+      List<Documento> documentos = new ArrayList<>();
+      for (Future<Documento> upload : uploads) {
+        documentos.add(upload.get(1, TimeUnit.MINUTES));
+      }
+
+      // then: every upload succeeds and is counted once
+      String hash = documentos.get(0).getHash();
+      Assertions.assertThat(documentos).extracting(Documento::getHash).containsOnly(hash);
+      Assertions.assertThat(getReferencias(hash)).isEqualTo(CONCURRENT_UPLOADS);
+      Assertions.assertThat(StoreUtils.getBlobPath(store.toString(), hash)).exists().hasBinaryContent(content);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void awaitPurge(String hash) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + PURGE_TIMEOUT_MILLIS;
+    while (contenidoRepository.existsById(hash) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+  }
+
+  private int getReferencias(String hash) {
+    return contenidoRepository.findById(hash).map(DocumentoContenido::getReferencias).orElse(0);
+  }
+
+  private static Documento newDocumento() {
+    Documento documento = new Documento();
+    documento.setNombre("documento.txt");
+    documento.setTipo("text/plain");
+    documento.setAutorRef("user");
+    documento.setFechaCreacion(LocalDateTime.now());
+    documento.setVersion(1);
+    return documento;
+  }
+}
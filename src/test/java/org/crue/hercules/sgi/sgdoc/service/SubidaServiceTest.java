@@ -0,0 +1,175 @@
+package org.crue.hercules.sgi.sgdoc.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.crue.hercules.sgi.sgdoc.BaseStoreTest;
+import org.crue.hercules.sgi.sgdoc.exceptions.SubidaNotFoundException;
+import org.crue.hercules.sgi.sgdoc.model.Documento;
+import org.crue.hercules.sgi.sgdoc.model.Subida;
+import org.crue.hercules.sgi.sgdoc.repository.DocumentoRepository;
+import org.crue.hercules.sgi.sgdoc.utils.StoreUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * SubidaServiceTest
+ * 
+ * Finalización de las subidas por fragmentos.
+ */
+@SpringBootTest(properties = { "sgi.upload.session.chunk-size=1KB",
+    "spring.datasource.url=jdbc:h2:mem:sgdocsubida;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000" })
+class SubidaServiceTest extends BaseStoreTest {
+
+  /** Tres fragmentos, el último incompleto */
+  private static final int TAMANO = 2500;
+  private static final int TAMANO_FRAGMENTO = 1024;
+
+  @Autowired
+  private SubidaService subidaService;
+
+  @Autowired
+  private StoreService storeService;
+
+  @Autowired
+  private DocumentoRepository documentoRepository;
+
+  @Test
+  void complete_WithAllFragmentos_CreatesDocumento() throws Exception {
+    // given: a subida with every fragment received
+    byte[] content = randomContent(TAMANO);
+    Subida subida = upload(content);
+
+    // when: it is completed
+    Documento documento = subidaService.complete(subida.getId());
+
+    // then: the documento has the assembled content and the subida is gone
+    Assertions.assertThat(documento.getHash()).isEqualTo(sha256(content));
+    Assertions.assertThat(documento.getNombre()).isEqualTo(subida.getNombre());
+    try (InputStream in = storeService.getResource(documento).getInputStream()) {
+      Assertions.assertThat(in).hasSameContentAs(new ByteArrayInputStream(content));
+    }
+    Assertions.assertThatThrownBy(() -> subidaService.findById(subida.getId()))
+        .isInstanceOf(SubidaNotFoundException.class);
+    Assertions.assertThat(StoreUtils.getUploadPath(store.toString(), subida.getId())).doesNotExist();
+  }
+
+  @Test
+  void complete_WithRollback_KeepsSubidaForRetry() throws Exception {
+    // given: a subida with every fragment received and a store that cannot
+    // take the file (a regular file where today's directory should be)
+    byte[] content = randomContent(TAMANO);
+    Subida subida = upload(content);
+    Path dateDirectory = StoreUtils.getDateDirectory(store.toString(), LocalDate.now());
+    Files.createDirectories(dateDirectory.getParent());
+    Files.createFile(dateDirectory);
+
+    try {
+      // when: it is completed
+      Assertions.assertThatThrownBy(() -> subidaService.complete(subida.getId()))
+          .isInstanceOf(RuntimeException.class);
+
+      // then: nothing is created and the subida is intact
+      Assertions.assertThat(documentoRepository.findByHash(sha256(content))).isEmpty();
+      Assertions.assertThat(subidaService.findEstadoById(subida.getId()).getFragmentosRecibidos())
+          .containsExactly(0, 1, 2);
+      Assertions.assertThat(listTmp()).noneMatch(name -> name.startsWith("subida-" + subida.getId()));
+    } finally {
+      Files.delete(dateDirectory);
+    }
+
+    // and: it can be completed again
+    Documento documento = subidaService.complete(subida.getId());
+    Assertions.assertThat(documento.getHash()).isEqualTo(sha256(content));
+    try (InputStream in = storeService.getResource(documento).getInputStream()) {
+      Assertions.assertThat(in).hasSameContentAs(new ByteArrayInputStream(content));
+    }
+  }
+
+  @Test
+  void complete_Concurrently_CreatesOneDocumento() throws Exception {
+    // given: a subida completed twice at the same time
+    byte[] content = randomContent(TAMANO);
+    Subida subida = upload(content);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<Documento>> completions = new ArrayList<>();
+    try {
+      for (int i = 0; i < 2; i++) {
+        completions.add(executor.submit(() -> {
+          start.await();
+          return subidaService.complete(subida.getId());
+        }));
+      }
+
+      // when: both run
+      start.countDown();
+      int completed = 0;
+      for (Future<Documento> completion : completions) {
+        try {
+          completion.get(1, TimeUnit.MINUTES);
+          completed++;
+        } catch (ExecutionException e) {
+          // The other one found the subida locked and then deleted
+        }
+      }
+
+      // then: only one documento is created
+      Assertions.assertThat(completed).isEqualTo(1);
+      Assertions.assertThat(documentoRepository.findByHash(sha256(content))).hasSize(1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Subida upload(byte[] content) {
+    Subida subida = new Subida();
+    subida.setNombre("subida.bin");
+    subida.setTipo("application/octet-stream");
+    subida.setAutorRef("user");
+    subida.setTamano((long) content.length);
+    Subida created = subidaService.create(subida);
+    Assertions.assertThat(created.getNumFragmentos()).isEqualTo(3);
+
+    // Out of order, so that the last one triggers the assembly of the others
+    for (int index : new int[] { 2, 0, 1 }) {
+      int from = index * TAMANO_FRAGMENTO;
+      int to = Math.min(from + TAMANO_FRAGMENTO, content.length);
+      subidaService.uploadFragmento(created.getId(), index,
+          new ByteArrayInputStream(Arrays.copyOfRange(content, from, to)));
+    }
+    return created;
+  }
+
+  private List<String> listTmp() throws IOException {
+    List<String> names = new ArrayList<>();
+    Path tmp = StoreUtils.getTmpPath(store.toString());
+    if (Files.exists(tmp)) {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(tmp)) {
+        files.forEach(file -> names.add(file.getFileName().toString()));
+      }
+    }
+    return names;
+  }
+
+  private static String sha256(byte[] content) throws Exception {
+    return StoreUtils.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+  }
+}
@@ -0,0 +1,97 @@
+package org.crue.hercules.sgi.sgdoc.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * StoreUtilsTest
+ *
+ * Publicación de los ficheros en el store.
+ */
+class StoreUtilsTest {
+
+  private static final byte[] CONTENT = "contenido".getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void move_WithNewTarget_PublishesFile() throws Exception {
+    // given: a staged file and a target in a directory that does not exist yet
+    Path source = Files.write(directory.resolve("staged.tmp"), CONTENT);
+    Path target = directory.resolve("2021").resolve("01").resolve("01").resolve("documento");
+
+    // when: it is moved
+    StoreUtils.move(source, target);
+
+    // then: the target has the content and the staged file is gone
+    Assertions.assertThat(target).hasBinaryContent(CONTENT);
+    Assertions.assertThat(source).doesNotExist();
+  }
+
+  @Test
+  void move_WithExistingTarget_ThrowsFileAlreadyExistsException() throws Exception {
+    // given: a staged file and a target that already exists
+    Path source = Files.write(directory.resolve("staged.tmp"), CONTENT);
+    byte[] existing = "existente".getBytes(StandardCharsets.UTF_8);
+    Path target = Files.write(directory.resolve("documento"), existing);
+
+    // when: it is moved, then: the target is not replaced
+    Assertions.assertThatThrownBy(() -> StoreUtils.move(source, target))
+        .isInstanceOf(FileAlreadyExistsException.class);
+    Assertions.assertThat(target).hasBinaryContent(existing);
+    Assertions.assertThat(source).exists();
+  }
+
+  @Test
+  void link_WithFileSystemError_ReturnsFalse() throws Exception {
+    // given: a link to a file that cannot be linked (it does not exist, which
+    // the file system reports like EPERM or EXDEV, as a FileSystemException)
+    Path link = directory.resolve("link");
+
+    // when: it is linked, then: the caller is told to fall back
+    Assertions.assertThat(StoreUtils.link(link, directory.resolve("missing"))).isFalse();
+    Assertions.assertThat(link).doesNotExist();
+  }
+
+  @Test
+  void link_WithExistingLink_ThrowsFileAlreadyExistsException() throws Exception {
+    // given: a link that already exists
+    Path existing = Files.write(directory.resolve("existing"), CONTENT);
+    Path link = Files.write(directory.resolve("link"), CONTENT);
+
+    // when: it is linked, then: it is not a reason to fall back
+    Assertions.assertThatThrownBy(() -> StoreUtils.link(link, existing))
+        .isInstanceOf(FileAlreadyExistsException.class);
+  }
+
+  @Test
+  void move_AcrossFileSystems_FallsBackToMove() throws Exception {
+    // given: a staged file in another file system (hard links fail with EXDEV)
+    Path otherFileSystem = Paths.get("/dev/shm");
+    Assumptions.assumeTrue(Files.isDirectory(otherFileSystem) && Files.isWritable(otherFileSystem)
+        && !Files.getFileStore(otherFileSystem).equals(Files.getFileStore(directory)));
+    Path source = Files.createTempFile(otherFileSystem, "sgdoc-test-", ".tmp");
+    try {
+      Files.write(source, CONTENT);
+      Path target = directory.resolve("documento");
+
+      // when: it is moved
+      StoreUtils.move(source, target);
+
+      // then: it is published all the same
+      Assertions.assertThat(target).hasBinaryContent(CONTENT);
+      Assertions.assertThat(source).doesNotExist();
+    } finally {
+      Files.deleteIfExists(source);
+    }
+  }
+}